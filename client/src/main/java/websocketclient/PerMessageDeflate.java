@@ -0,0 +1,207 @@
+package websocketclient;
+
+import org.glassfish.tyrus.core.extension.ExtendedExtension;
+import org.glassfish.tyrus.core.frame.Frame;
+
+import javax.websocket.Extension;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Client side of the permessage-deflate WebSocket extension (RFC 7692). Once the handshake
+ * agrees on it, Tyrus runs every frame through here; if the server declines it, frames pass
+ * untouched.
+ * <p>
+ * The level applies to what this client sends. Without context takeover each message is
+ * compressed on its own, losing some ratio but holding no window between messages, and the
+ * server is asked to do the same for what it sends. Byte counts on both sides of the codec
+ * give the ratio actually achieved in each direction.
+ */
+public class PerMessageDeflate implements ExtendedExtension {
+    public static final String NAME = "permessage-deflate";
+    private static final String STATE = NAME + ".state";
+    private static final byte[] TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+    private static final byte CONTINUATION = 0x0;
+
+    private final int level;
+    private final boolean contextTakeover;
+    private final AtomicLong inboundWireBytes = new AtomicLong();
+    private final AtomicLong inboundMessageBytes = new AtomicLong();
+    private final AtomicLong outboundMessageBytes = new AtomicLong();
+    private final AtomicLong outboundWireBytes = new AtomicLong();
+
+    private record Parameter(String getName, String getValue) implements Extension.Parameter {
+    }
+
+    private static class State {
+        final Deflater deflater;
+        final Inflater inflater = new Inflater(true);
+        boolean resetDeflater;
+        boolean resetInflater;
+        // a compressed message is split across frames, and only the first one is marked
+        boolean inboundCompressed;
+
+        State(int level) {
+            deflater = new Deflater(level, true);
+        }
+    }
+
+    /**
+     * @param level           {@link Deflater} level, 0-9 or -1 for the default
+     * @param contextTakeover whether either side may reuse its window from earlier messages
+     */
+    public PerMessageDeflate(int level, boolean contextTakeover) {
+        this.level = level;
+        this.contextTakeover = contextTakeover;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<Extension.Parameter> getParameters() {
+        if (contextTakeover) {
+            return List.of();
+        }
+        return List.of(new Parameter("client_no_context_takeover", null),
+                new Parameter("server_no_context_takeover", null));
+    }
+
+    @Override
+    public Frame processIncoming(ExtensionContext context, Frame frame) {
+        State state = (State) context.getProperties().get(STATE);
+        if (state == null || frame.isControlFrame()) {
+            return frame;
+        }
+        boolean compressed = frame.getOpcode() == CONTINUATION ? state.inboundCompressed : frame.isRsv1();
+        state.inboundCompressed = compressed && !frame.isFin();
+        if (!compressed) {
+            return frame;
+        }
+
+        byte[] payload = frame.getPayloadData();
+        if (frame.isFin()) {
+            payload = Arrays.copyOf(payload, payload.length + TAIL.length);
+            System.arraycopy(TAIL, 0, payload, payload.length - TAIL.length, TAIL.length);
+        }
+        byte[] inflated = inflate(state.inflater, payload);
+        if (frame.isFin() && state.resetInflater) {
+            state.inflater.reset();
+        }
+        inboundWireBytes.addAndGet(frame.getPayloadLength());
+        inboundMessageBytes.addAndGet(inflated.length);
+        return Frame.builder(frame).rsv1(false).payloadData(inflated).build();
+    }
+
+    @Override
+    public Frame processOutgoing(ExtensionContext context, Frame frame) {
+        State state = (State) context.getProperties().get(STATE);
+        // compression is optional per message, so anything sent in pieces just goes as it is
+        if (state == null || frame.isControlFrame() || frame.getOpcode() == CONTINUATION || !frame.isFin()) {
+            return frame;
+        }
+        byte[] payload = frame.getPayloadData();
+        byte[] deflated = deflate(state.deflater, payload);
+        if (state.resetDeflater) {
+            state.deflater.reset();
+        }
+        outboundMessageBytes.addAndGet(payload.length);
+        outboundWireBytes.addAndGet(deflated.length);
+        return Frame.builder(frame).rsv1(true).payloadData(deflated).build();
+    }
+
+    @Override
+    public List<Extension.Parameter> onExtensionNegotiation(ExtensionContext context,
+                                                            List<Extension.Parameter> requestedParameters) {
+        // only called on the server side of a connection
+        return requestedParameters;
+    }
+
+    @Override
+    public void onHandshakeResponse(ExtensionContext context, List<Extension.Parameter> responseParameters) {
+        State state = new State(level);
+        state.resetDeflater = !contextTakeover;
+        for (Extension.Parameter parameter : responseParameters) {
+            switch (parameter.getName()) {
+                case "client_no_context_takeover" -> state.resetDeflater = true;
+                case "server_no_context_takeover" -> state.resetInflater = true;
+                default -> { }
+            }
+        }
+        context.getProperties().put(STATE, state);
+    }
+
+    @Override
+    public void destroy(ExtensionContext context) {
+        State state = (State) context.getProperties().remove(STATE);
+        if (state != null) {
+            state.deflater.end();
+            state.inflater.end();
+        }
+    }
+
+    /**
+     * How many times smaller messages from the server were on the wire, 1 if none were compressed
+     */
+    public double getInboundCompressionRatio() {
+        return ratio(inboundMessageBytes.get(), inboundWireBytes.get());
+    }
+
+    public double getOutboundCompressionRatio() {
+        return ratio(outboundMessageBytes.get(), outboundWireBytes.get());
+    }
+
+    public long getInboundWireBytes() {
+        return inboundWireBytes.get();
+    }
+
+    public long getOutboundWireBytes() {
+        return outboundWireBytes.get();
+    }
+
+    private static double ratio(long messageBytes, long wireBytes) {
+        return wireBytes == 0 ? 1 : (double) messageBytes / wireBytes;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] payload) {
+        deflater.setInput(payload);
+        var out = new ByteArrayOutputStream(payload.length / 2 + 16);
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH)) > 0) {
+            out.write(buffer, 0, length);
+        }
+        byte[] deflated = out.toByteArray();
+        // every sync flush ends with the same empty block, which the receiver adds back
+        if (deflated.length >= TAIL.length && Arrays.equals(deflated, deflated.length - TAIL.length,
+                deflated.length, TAIL, 0, TAIL.length)) {
+            return Arrays.copyOf(deflated, deflated.length - TAIL.length);
+        }
+        return deflated;
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] payload) {
+        inflater.setInput(payload);
+        var out = new ByteArrayOutputStream(payload.length * 4);
+        byte[] buffer = new byte[4096];
+        try {
+            while (!inflater.needsInput()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, length);
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt compressed frame: " + ex.getMessage());
+        }
+        return out.toByteArray();
+    }
+}
@@ -3,47 +3,88 @@ package websocketclient;
 import chess.*;
 import com.google.gson.Gson;
 import model.GameData;
+import websocket.BinaryProtocol;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
 import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
 
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
 
 import static ui.EscapeSequences.*;
 
 
 public class WSClient extends Endpoint {
     private final Session session;
+    private final PerMessageDeflate deflate;
+    // frames in BinaryProtocol rather than JSON text, off unless chess.ws.binary is set
+    private final boolean binary;
     private GameData currGame;
     private boolean flipBoard;
+    private String authToken;
+    private int gameID;
 
     public WSClient() throws Exception {
-        URI uri = new URI("ws://localhost:8081/ws");
+        this.binary = Boolean.getBoolean("chess.ws.binary");
+        // chess.ws.moves asks for single moves after the first LOAD_GAME, the board being kept up
+        // to date here; otherwise every update is the whole game, as from any other client
+        List<String> params = new ArrayList<>();
+        if (Boolean.getBoolean("chess.ws.moves")) {
+            params.add("updates=moves");
+        }
+        if (binary) {
+            params.add(BinaryProtocol.QUERY_PARAMETER + "=" + BinaryProtocol.QUERY_VALUE);
+        }
+        URI uri = new URI("ws://localhost:8081/ws" + (params.isEmpty() ? "" : "?" + String.join("&", params)));
+        // offer compression, most of what comes back being repetitive board data
+        this.deflate = new PerMessageDeflate(Integer.getInteger("chess.ws.deflateLevel", Deflater.DEFAULT_COMPRESSION),
+                Boolean.parseBoolean(System.getProperty("chess.ws.contextTakeover", "true")));
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create()
+                .extensions(Boolean.parseBoolean(System.getProperty("chess.ws.deflate", "true"))
+                        ? List.of(deflate) : List.of())
+                .build();
         WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-        this.session = container.connectToServer(this, uri);
+        this.session = container.connectToServer(this, config, uri);
         this.session.addMessageHandler(new MessageHandler.Whole<String>() {
             @Override
             public void onMessage(String message) {
                 ServerMessage serverMessage;
                 try {
                     serverMessage = new Gson().fromJson(message, ServerMessage.class);
+                    serverMessage = new Gson().fromJson(message, switch (serverMessage.getServerMessageType()) {
+                        case NOTIFICATION -> NotificationMessage.class;
+                        case LOAD_GAME -> LoadGameMessage.class;
+                        case MOVE -> MoveMessage.class;
+                        case ERROR -> ErrorMessage.class;
+                    });
                 } catch (Exception ex) {
                     System.out.printf("Error in onMessage: %s%n", ex.getMessage());
                     return;
                 }
-
-                switch (serverMessage.getServerMessageType()) {
-                    case NOTIFICATION -> handleNotification(message);
-                    case LOAD_GAME -> handleLoadGame(message);
-                    case ERROR -> handleError(message);
+                handle(serverMessage);
+            }
+        });
+        this.session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+            @Override
+            public void onMessage(ByteBuffer message) {
+                ServerMessage serverMessage;
+                try {
+                    serverMessage = BinaryProtocol.decodeMessage(message);
+                } catch (IllegalArgumentException ex) {
+                    System.out.printf("Error in onMessage: %s%n", ex.getMessage());
+                    return;
                 }
+                handle(serverMessage);
             }
         });
     }
@@ -53,6 +94,8 @@ public class WSClient extends Endpoint {
 
     public void connect(String authToken, int gameID, boolean flipBoard) throws IOException {
         this.flipBoard = flipBoard;
+        this.authToken = authToken;
+        this.gameID = gameID;
         send(UserGameCommand.CommandType.CONNECT, authToken, gameID, null);
     }
 
@@ -76,25 +119,72 @@ public class WSClient extends Endpoint {
             command = new MakeMoveCommand(commandType, authToken, gameID, move);
         }
 
-        session.getBasicRemote().sendText(new Gson().toJson(command));
+        if (binary) {
+            session.getBasicRemote().sendBinary(BinaryProtocol.encodeCommand(command));
+        } else {
+            session.getBasicRemote().sendText(new Gson().toJson(command));
+        }
     }
 
-    private void handleNotification(String message) {
-        NotificationMessage notificationMessage = new Gson().fromJson(message, NotificationMessage.class);
+    private void handle(ServerMessage message) {
+        switch (message.getServerMessageType()) {
+            case NOTIFICATION -> handleNotification((NotificationMessage) message);
+            case LOAD_GAME -> handleLoadGame((LoadGameMessage) message);
+            case MOVE -> handleMove((MoveMessage) message);
+            case ERROR -> handleError((ErrorMessage) message);
+        }
+    }
+
+    private void handleNotification(NotificationMessage notificationMessage) {
         System.out.printf("Notification: %s%n", notificationMessage.getMessage());
     }
 
-    private void handleLoadGame(String message) {
-        LoadGameMessage loadGameMessage = new Gson().fromJson(message, LoadGameMessage.class);
+    private void handleLoadGame(LoadGameMessage loadGameMessage) {
         currGame = loadGameMessage.getGame();
         drawBoard(currGame.game(), flipBoard, null);
     }
 
-    private void handleError(String message) {
-        ErrorMessage errorMessage = new Gson().fromJson(message, ErrorMessage.class);
+    private void handleMove(MoveMessage moveMessage) {
+        ChessGame game = currGame == null ? null : currGame.game();
+        if (game == null || moveMessage.getGameID() != currGame.gameID()
+                || game.getMoveCount() + 1 != moveMessage.getSeq()) {
+            resync();
+            return;
+        }
+        try {
+            game.makeMove(moveMessage.getMove());
+        } catch (InvalidMoveException ex) {
+            resync();
+            return;
+        }
+        if (moveMessage.hasStatus(MoveMessage.GAME_OVER)) {
+            game.endGame();
+        }
+        drawBoard(game, flipBoard, null);
+    }
+
+    /**
+     * Our board has drifted from the server's, so ask for the whole game again
+     */
+    private void resync() {
+        try {
+            send(UserGameCommand.CommandType.CONNECT, authToken, gameID, null);
+        } catch (IOException ex) {
+            System.out.printf("Unable to reload game: %s%n", ex.getMessage());
+        }
+    }
+
+    private void handleError(ErrorMessage errorMessage) {
         System.out.printf("Error: %s%n", errorMessage.getErrorMessage());
     }
 
+    /**
+     * Compression achieved on this connection, unused if the server did not accept the extension
+     */
+    public PerMessageDeflate getCompression() {
+        return deflate;
+    }
+
     public GameData getCurrGame() {
         return currGame;
     }
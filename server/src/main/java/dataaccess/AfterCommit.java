@@ -0,0 +1,66 @@
+package dataaccess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds back changes to state kept outside the database, such as caches and the game
+ * archive, until the transaction running on this thread commits, so a rollback never
+ * leaves them ahead of the tables. With no transaction running, they happen right away.
+ */
+final class AfterCommit {
+    @FunctionalInterface
+    interface Action {
+        void run() throws DataAccessException;
+    }
+
+    // actions waiting on the transaction running on this thread, if there is one
+    private static final ThreadLocal<List<Action>> PENDING = new ThreadLocal<>();
+
+    private AfterCommit() {
+    }
+
+    static void run(Action action) throws DataAccessException {
+        List<Action> pending = PENDING.get();
+        if (pending == null) {
+            action.run();
+        } else {
+            pending.add(action);
+        }
+    }
+
+    static void begin() {
+        PENDING.set(new ArrayList<>());
+    }
+
+    /**
+     * Ends this thread's transaction and returns the actions it held back, to be run only if
+     * it committed
+     */
+    static List<Action> end() {
+        List<Action> pending = PENDING.get();
+        PENDING.remove();
+        return pending == null ? List.of() : pending;
+    }
+
+    /**
+     * Runs every action even if an earlier one fails, then throws the first failure
+     */
+    static void runAll(List<Action> actions) throws DataAccessException {
+        DataAccessException failure = null;
+        for (Action action : actions) {
+            try {
+                action.run();
+            } catch (DataAccessException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dataaccess;
+
+import chess.ChessMove;
+import model.GameData;
+
+import java.util.List;
+
+/**
+ * A finished game as kept in the archives: the game itself plus its packed move history
+ */
+public record ArchivedGame(GameData gameData, List<Integer> moves) {
+    public List<ChessMove> unpackedMoves() {
+        return moves.stream().map(ChessMove::unpack).toList();
+    }
+}
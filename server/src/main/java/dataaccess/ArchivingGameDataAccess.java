@@ -0,0 +1,216 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import model.GameData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves games out of another GameDataAccess and into a GameArchive once they end, so the
+ * wrapped store only holds games still being played.
+ * <p>
+ * Once a game is in the archive, the archive is its only source of truth, even if a crash
+ * left a stale copy behind in the wrapped store. Archived games can still have players
+ * join or leave, which appends a new copy to the archive, but they no longer accept moves.
+ */
+public class ArchivingGameDataAccess implements GameDataAccess, AutoCloseable {
+    private final GameDataAccess delegate;
+    private final GameArchive archive;
+    // serializes changes to a game's seats with moving it into the archive, so neither is lost
+    // to the other; a Lock, since both wait on the disk and the wrapped store
+    private final ReentrantLock archiveLock = new ReentrantLock();
+
+    public ArchivingGameDataAccess(GameDataAccess delegate, Path archiveDirectory) throws DataAccessException {
+        this.delegate = delegate;
+        try {
+            this.archive = new GameArchive(archiveDirectory);
+        } catch (IOException ex) {
+            throw new DataAccessException(String.format("Unable to open game archive: %s", ex.getMessage()));
+        }
+    }
+
+    public GameData createGame(String gameName) throws DataAccessException {
+        return delegate.createGame(gameName);
+    }
+
+    public GameData getGame(int gameID) throws DataAccessException {
+        ArchivedGame archivedGame = archive.read(gameID);
+        if (archivedGame != null) {
+            return archivedGame.gameData();
+        }
+        GameData liveGame = delegate.getGame(gameID);
+        if (liveGame == null) {
+            // the game may have been archived since the archive was checked
+            archivedGame = archive.read(gameID);
+            return archivedGame == null ? null : archivedGame.gameData();
+        }
+        return liveGame;
+    }
+
+    /**
+     * Only removes games still in the wrapped store; the archive never forgets a single game
+     */
+    public void deleteGame(int gameID) throws DataAccessException {
+        delegate.deleteGame(gameID);
+    }
+
+    public void deleteAllGames() throws DataAccessException {
+        delegate.deleteAllGames();
+        // the archive cannot be rolled back, so it is only cleared once the delete has committed
+        AfterCommit.run(() -> {
+            try {
+                archive.clear();
+            } catch (IOException ex) {
+                throw new DataAccessException(String.format("Unable to clear game archive: %s", ex.getMessage()));
+            }
+        });
+    }
+
+    public Collection<GameData> listAllGames() throws DataAccessException {
+        Collection<GameData> allGames = new ArrayList<>();
+        for (GameData liveGame : delegate.listAllGames()) {
+            // skip stale copies of games that were archived but not yet removed from the wrapped store
+            if (!archive.contains(liveGame.gameID())) {
+                allGames.add(liveGame);
+            }
+        }
+        allGames.addAll(archive.listGames());
+        return allGames;
+    }
+
+    public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
+        archiveLock.lock();
+        try {
+            if (!archive.contains(gameID)) {
+                delegate.joinGame(color, gameID, username);
+                return;
+            }
+            ArchivedGame archivedGame = archive.read(gameID);
+            GameData game = archivedGame.gameData();
+            String userToReplace = color == ChessGame.TeamColor.WHITE ? game.whiteUsername() : game.blackUsername();
+            if (userToReplace != null && !userToReplace.isEmpty()) {
+                throw new DataAccessException("already taken");
+            }
+            rewrite(archivedGame, withSeat(game, color, username));
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    public void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+        archiveLock.lock();
+        try {
+            if (!archive.contains(gameID)) {
+                delegate.leaveGame(color, gameID);
+                return;
+            }
+            ArchivedGame archivedGame = archive.read(gameID);
+            rewrite(archivedGame, withSeat(archivedGame.gameData(), color, null));
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    public void updateGame(GameData gameData) throws DataAccessException {
+        archiveLock.lock();
+        try {
+            if (!archive.contains(gameData.gameID())) {
+                delegate.updateGame(gameData);
+                return;
+            }
+            ArchivedGame archivedGame = archive.read(gameData.gameID());
+            if (archivedGame.gameData().version() != gameData.version()) {
+                throw new DataAccessException("conflict");
+            }
+            rewrite(archivedGame, new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
+                    gameData.gameName(), gameData.game(), gameData.version() + 1));
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    public void recordMove(GameData gameData, ChessMove move) throws DataAccessException {
+        if (archive.contains(gameData.gameID())) {
+            throw new DataAccessException("bad request");
+        }
+        delegate.recordMove(gameData, move);
+    }
+
+    public void recordMoves(Collection<MoveBatch> batches) throws DataAccessException {
+        for (MoveBatch batch : batches) {
+            if (archive.contains(batch.gameID())) {
+                throw new DataAccessException("bad request");
+            }
+        }
+        delegate.recordMoves(batches);
+    }
+
+    public void endGame(int gameID) throws DataAccessException {
+        if (archive.contains(gameID)) {
+            return;
+        }
+        delegate.endGame(gameID);
+        // an ended game takes no more moves, so they can be read before locking
+        List<ChessMove> moves = delegate.listMoves(gameID);
+
+        // the seats are read under the lock, so a join landing part way through is either in the
+        // copy archived or waits and goes to the archive. The archive copy is written first, so
+        // a crash in between leaves a stale live copy, never a lost game.
+        archiveLock.lock();
+        try {
+            if (archive.contains(gameID)) {
+                return;
+            }
+            GameData endedGame = delegate.getGame(gameID);
+            if (endedGame == null) {
+                throw new DataAccessException("bad request");
+            }
+            archive.append(endedGame, moves);
+            delegate.deleteGame(gameID);
+        } catch (IOException ex) {
+            throw new DataAccessException(String.format("Unable to archive game %d: %s", gameID, ex.getMessage()));
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    public List<ChessMove> listMoves(int gameID) throws DataAccessException {
+        ArchivedGame archivedGame = archive.read(gameID);
+        if (archivedGame != null) {
+            return archivedGame.unpackedMoves();
+        }
+        return delegate.listMoves(gameID);
+    }
+
+    public int getArchivedGameCount() {
+        return archive.size();
+    }
+
+    public void close() {
+        archive.close();
+    }
+
+    private void rewrite(ArchivedGame archivedGame, GameData updatedGame) throws DataAccessException {
+        try {
+            archive.append(updatedGame, archivedGame.unpackedMoves());
+        } catch (IOException ex) {
+            throw new DataAccessException(String.format("Unable to update archived game %d: %s",
+                    updatedGame.gameID(), ex.getMessage()));
+        }
+    }
+
+    private static GameData withSeat(GameData game, ChessGame.TeamColor color, String username) {
+        if (color == ChessGame.TeamColor.WHITE) {
+            return new GameData(game.gameID(), username, game.blackUsername(), game.gameName(), game.game(),
+                    game.version() + 1);
+        }
+        return new GameData(game.gameID(), game.whiteUsername(), username, game.gameName(), game.game(),
+                game.version() + 1);
+    }
+}
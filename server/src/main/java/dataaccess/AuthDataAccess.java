@@ -8,5 +8,11 @@ public interface AuthDataAccess {
     AuthData retrieveAuthByUsername(String username) throws DataAccessException;
     void deleteAuth(String authToken) throws DataAccessException;
     void deleteAllAuths() throws DataAccessException;
+
+    /**
+     * Deletes up to limit auths last used before idleCutoff or issued before absoluteCutoff
+     * (both in epoch milliseconds) and returns how many were deleted
+     */
+    int deleteExpiredAuths(long idleCutoff, long absoluteCutoff, int limit) throws DataAccessException;
     int retrieveNumAuths() throws DataAccessException;
 }
@@ -0,0 +1,151 @@
+package dataaccess;
+
+import model.AuthData;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches authToken lookups in front of another AuthDataAccess.
+ * <p>
+ * Entries expire after the time to live and the cache holds at most maxEntries tokens.
+ * Deleting a token through this class removes it from the cache immediately; tokens
+ * deleted behind its back (for example by another server) are served until they expire.
+ */
+public class CachingAuthDataAccess implements AuthDataAccess {
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+
+    private final AuthDataAccess delegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // bumped on every invalidation so a lookup that raced with a logout is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private record CacheEntry(AuthData authData, long loadedAt) {
+    }
+
+    public CachingAuthDataAccess(AuthDataAccess delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public CachingAuthDataAccess(AuthDataAccess delegate, int maxEntries, long ttlMillis) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public AuthData createAuth(String username) throws DataAccessException {
+        AuthData authData = delegate.createAuth(username);
+        put(authData);
+        return authData;
+    }
+
+    public AuthData retrieveAuthByAuthToken(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            return delegate.retrieveAuthByAuthToken(null);
+        }
+        CacheEntry entry = entries.get(authToken);
+        if (entry != null) {
+            if (!isExpired(entry, System.currentTimeMillis())) {
+                hits.incrementAndGet();
+                return entry.authData();
+            }
+            entries.remove(authToken, entry);
+        }
+
+        misses.incrementAndGet();
+        long loadGeneration = generation.get();
+        AuthData authData = delegate.retrieveAuthByAuthToken(authToken);
+        if (authData != null) {
+            CacheEntry loaded = put(authData);
+            if (generation.get() != loadGeneration) {
+                entries.remove(authToken, loaded);
+            }
+        }
+        return authData;
+    }
+
+    public AuthData retrieveAuthByUsername(String username) throws DataAccessException {
+        return delegate.retrieveAuthByUsername(username);
+    }
+
+    public void deleteAuth(String authToken) throws DataAccessException {
+        try {
+            delegate.deleteAuth(authToken);
+        } finally {
+            generation.incrementAndGet();
+            if (authToken != null) {
+                entries.remove(authToken);
+            }
+        }
+    }
+
+    public void deleteAllAuths() throws DataAccessException {
+        try {
+            delegate.deleteAllAuths();
+        } finally {
+            invalidateAll();
+            // and again once the delete commits, dropping anything loaded from the old rows meanwhile
+            AfterCommit.run(this::invalidateAll);
+        }
+    }
+
+    public int deleteExpiredAuths(long idleCutoff, long absoluteCutoff, int limit) throws DataAccessException {
+        int deleted = delegate.deleteExpiredAuths(idleCutoff, absoluteCutoff, limit);
+        if (deleted > 0) {
+            // which tokens went is not reported back, so drop them all rather than serve a purged one
+            generation.incrementAndGet();
+            entries.clear();
+        }
+        return deleted;
+    }
+
+    public int retrieveNumAuths() throws DataAccessException {
+        return delegate.retrieveNumAuths();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private boolean isExpired(CacheEntry entry, long now) {
+        return now - entry.loadedAt() > ttlMillis;
+    }
+
+    private CacheEntry put(AuthData authData) {
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxEntries) {
+            makeRoom(now);
+        }
+        CacheEntry entry = new CacheEntry(authData, now);
+        entries.put(authData.authToken(), entry);
+        return entry;
+    }
+
+    private void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    private void makeRoom(long now) {
+        entries.values().removeIf(entry -> isExpired(entry, now));
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (entries.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
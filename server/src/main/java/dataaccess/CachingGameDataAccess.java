@@ -0,0 +1,213 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import model.GameData;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of another GameDataAccess, keyed by gameID.
+ * <p>
+ * Holds at most maxEntries games, evicting the least recently used one when full, and
+ * drops entries older than the time to live. Writes that carry a whole game replace its
+ * entry; writes whose result is only known to the wrapped store invalidate it.
+ */
+public class CachingGameDataAccess implements GameDataAccess {
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    private final GameDataAccess delegate;
+    private final long ttlMillis;
+    private final LinkedHashMap<Integer, CacheEntry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // bumped on every invalidation so a load that raced with a write is not cached
+    private long generation;
+
+    private record CacheEntry(GameData gameData, long loadedAt) {
+    }
+
+    public CachingGameDataAccess(GameDataAccess delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public CachingGameDataAccess(GameDataAccess delegate, int maxEntries, long ttlMillis) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public GameData createGame(String gameName) throws DataAccessException {
+        GameData gameData = delegate.createGame(gameName);
+        put(gameData);
+        return gameData;
+    }
+
+    public GameData getGame(int gameID) throws DataAccessException {
+        long loadGeneration;
+        synchronized (entries) {
+            loadGeneration = generation;
+            CacheEntry entry = entries.get(gameID);
+            if (entry != null) {
+                if (System.currentTimeMillis() - entry.loadedAt() <= ttlMillis) {
+                    hits.incrementAndGet();
+                    return entry.gameData();
+                }
+                entries.remove(gameID);
+                evictions.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+        GameData gameData = delegate.getGame(gameID);
+        if (gameData != null) {
+            synchronized (entries) {
+                if (generation == loadGeneration) {
+                    entries.put(gameID, new CacheEntry(gameData, System.currentTimeMillis()));
+                }
+            }
+        }
+        return gameData;
+    }
+
+    public void deleteGame(int gameID) throws DataAccessException {
+        try {
+            delegate.deleteGame(gameID);
+        } finally {
+            invalidate(gameID);
+        }
+    }
+
+    public void deleteAllGames() throws DataAccessException {
+        try {
+            delegate.deleteAllGames();
+        } finally {
+            invalidateAll();
+            // and again once the delete commits, dropping anything loaded from the old rows meanwhile
+            AfterCommit.run(this::invalidateAll);
+        }
+    }
+
+    public Collection<GameData> listAllGames() throws DataAccessException {
+        return delegate.listAllGames();
+    }
+
+    public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
+        try {
+            delegate.joinGame(color, gameID, username);
+        } finally {
+            invalidate(gameID);
+        }
+    }
+
+    public void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+        try {
+            delegate.leaveGame(color, gameID);
+        } finally {
+            invalidate(gameID);
+        }
+    }
+
+    public void updateGame(GameData gameData) throws DataAccessException {
+        // the wrapped store assigns the new version, so the next read has to come from it
+        try {
+            delegate.updateGame(gameData);
+        } finally {
+            invalidate(gameData.gameID());
+        }
+    }
+
+    public void recordMove(GameData gameData, ChessMove move) throws DataAccessException {
+        writeThrough(gameData, () -> delegate.recordMove(gameData, move));
+    }
+
+    public void recordMoves(Collection<MoveBatch> batches) throws DataAccessException {
+        try {
+            delegate.recordMoves(batches);
+        } finally {
+            for (MoveBatch batch : batches) {
+                invalidate(batch.gameID());
+            }
+        }
+    }
+
+    public void endGame(int gameID) throws DataAccessException {
+        try {
+            delegate.endGame(gameID);
+        } finally {
+            invalidate(gameID);
+        }
+    }
+
+    public List<ChessMove> listMoves(int gameID) throws DataAccessException {
+        return delegate.listMoves(gameID);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private interface Write {
+        void run() throws DataAccessException;
+    }
+
+    private void writeThrough(GameData gameData, Write write) throws DataAccessException {
+        try {
+            write.run();
+        } catch (DataAccessException | RuntimeException ex) {
+            // the caller may already have changed this object, so it no longer matches the store
+            invalidate(gameData.gameID());
+            throw ex;
+        }
+        put(gameData);
+    }
+
+    private void put(GameData gameData) {
+        synchronized (entries) {
+            entries.put(gameData.gameID(), new CacheEntry(gameData, System.currentTimeMillis()));
+        }
+    }
+
+    private void invalidate(int gameID) {
+        synchronized (entries) {
+            entries.remove(gameID);
+            generation++;
+        }
+    }
+
+    private void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+    }
+}
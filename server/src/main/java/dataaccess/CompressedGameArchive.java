@@ -0,0 +1,345 @@
+package dataaccess;
+
+import chess.ChessMove;
+import com.google.gson.Gson;
+import model.GameData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only file of games packed into Deflater-compressed blocks, written by
+ * {@link Writer}.
+ * <p>
+ * The file is a magic number, then the blocks, then an index of gameID to block offset and
+ * a trailer pointing at the index. Each block starts with its game count, uncompressed and
+ * compressed lengths and a CRC32C of the compressed bytes, so looking up one game only
+ * reads and inflates the block that holds it. A file whose index never got written is
+ * still readable; its blocks are scanned instead.
+ */
+public class CompressedGameArchive implements AutoCloseable {
+    private static final int MAGIC = 0x43474131;
+    private static final int BLOCK_HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+    public static final int DEFAULT_GAMES_PER_BLOCK = 64;
+
+    private final FileChannel channel;
+    private final Map<Integer, Long> blockIndex;
+    private final Gson gson = new Gson();
+    // the most recently inflated block, since lookups tend to cluster
+    private volatile InflatedBlock lastBlock;
+
+    private record InflatedBlock(long offset, int gameCount, byte[] bytes) {
+    }
+
+    private CompressedGameArchive(FileChannel channel, Map<Integer, Long> blockIndex) {
+        this.channel = channel;
+        this.blockIndex = blockIndex;
+    }
+
+    public static CompressedGameArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = readAt(channel, 0, Integer.BYTES);
+            if (magic.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a compressed game archive", file));
+            }
+            Map<Integer, Long> blockIndex = readIndex(channel);
+            if (blockIndex == null) {
+                blockIndex = scanBlocks(channel);
+            }
+            return new CompressedGameArchive(channel, blockIndex);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the archived copy of a game, or null if it is not in this file
+     */
+    public ArchivedGame read(int gameID) throws IOException {
+        Long blockOffset = blockIndex.get(gameID);
+        if (blockOffset == null) {
+            return null;
+        }
+        InflatedBlock block = lastBlock;
+        if (block == null || block.offset() != blockOffset) {
+            block = inflateBlock(channel, blockOffset);
+            lastBlock = block;
+        }
+        ByteBuffer entries = ByteBuffer.wrap(block.bytes());
+        for (int i = 0; i < block.gameCount(); i++) {
+            int entryGameID = entries.getInt();
+            int length = entries.getInt();
+            if (entryGameID == gameID) {
+                return decode(block.bytes(), entries.position(), length);
+            }
+            entries.position(entries.position() + length);
+        }
+        return null;
+    }
+
+    /**
+     * Hands every game to the consumer in file order, inflating each block once
+     */
+    public void forEach(Consumer<ArchivedGame> consumer) throws IOException {
+        long offset = Integer.BYTES;
+        long end = blocksEnd(channel);
+        while (offset < end) {
+            InflatedBlock block = inflateBlock(channel, offset);
+            ByteBuffer entries = ByteBuffer.wrap(block.bytes());
+            for (int i = 0; i < block.gameCount(); i++) {
+                entries.getInt();
+                int length = entries.getInt();
+                consumer.accept(decode(block.bytes(), entries.position(), length));
+                entries.position(entries.position() + length);
+            }
+            offset += BLOCK_HEADER_BYTES + compressedLength(channel, offset);
+        }
+    }
+
+    public Collection<Integer> listGameIDs() {
+        return new ArrayList<>(blockIndex.keySet());
+    }
+
+    public int size() {
+        return blockIndex.size();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ArchivedGame decode(byte[] bytes, int offset, int length) {
+        return gson.fromJson(new String(bytes, offset, length, StandardCharsets.UTF_8), ArchivedGame.class);
+    }
+
+    private static InflatedBlock inflateBlock(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = readAt(channel, offset, BLOCK_HEADER_BYTES);
+        int gameCount = header.getInt();
+        int uncompressedLength = header.getInt();
+        int compressedLength = header.getInt();
+        int checksum = header.getInt();
+
+        ByteBuffer compressed = readAt(channel, offset + BLOCK_HEADER_BYTES, compressedLength);
+        CRC32C crc = new CRC32C();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException(String.format("Block at offset %d is corrupt", offset));
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] bytes = new byte[uncompressedLength];
+            int inflated = 0;
+            while (inflated < uncompressedLength && !inflater.finished()) {
+                inflated += inflater.inflate(bytes, inflated, uncompressedLength - inflated);
+                if (inflater.needsInput()) {
+                    break;
+                }
+            }
+            if (inflated != uncompressedLength) {
+                throw new IOException(String.format("Block at offset %d is truncated", offset));
+            }
+            return new InflatedBlock(offset, gameCount, bytes);
+        } catch (DataFormatException ex) {
+            throw new IOException(String.format("Block at offset %d is corrupt: %s", offset, ex.getMessage()));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int compressedLength(FileChannel channel, long blockOffset) throws IOException {
+        return readAt(channel, blockOffset + 2 * Integer.BYTES, Integer.BYTES).getInt();
+    }
+
+    /**
+     * Reads the index the writer left at the end of the file, or returns null if there is none
+     */
+    private static Map<Integer, Long> readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < Integer.BYTES + TRAILER_BYTES) {
+            return null;
+        }
+        ByteBuffer trailer = readAt(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != MAGIC || indexOffset < Integer.BYTES || indexOffset > size - TRAILER_BYTES) {
+            return null;
+        }
+        ByteBuffer index = readAt(channel, indexOffset, (int) (size - TRAILER_BYTES - indexOffset));
+        int entryCount = index.getInt();
+        Map<Integer, Long> blockIndex = new HashMap<>(entryCount * 2);
+        for (int i = 0; i < entryCount; i++) {
+            blockIndex.put(index.getInt(), index.getLong());
+        }
+        return blockIndex;
+    }
+
+    private static Map<Integer, Long> scanBlocks(FileChannel channel) throws IOException {
+        Map<Integer, Long> blockIndex = new HashMap<>();
+        long offset = Integer.BYTES;
+        while (offset + BLOCK_HEADER_BYTES <= channel.size()) {
+            InflatedBlock block;
+            try {
+                block = inflateBlock(channel, offset);
+            } catch (IOException ex) {
+                // a block cut off by a crash ends the readable part of the file
+                break;
+            }
+            ByteBuffer entries = ByteBuffer.wrap(block.bytes());
+            for (int i = 0; i < block.gameCount(); i++) {
+                blockIndex.put(entries.getInt(), offset);
+                int length = entries.getInt();
+                entries.position(entries.position() + length);
+            }
+            offset += BLOCK_HEADER_BYTES + compressedLength(channel, offset);
+        }
+        return blockIndex;
+    }
+
+    private static long blocksEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size >= Integer.BYTES + TRAILER_BYTES) {
+            ByteBuffer trailer = readAt(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() == MAGIC) {
+                return indexOffset;
+            }
+        }
+        return size;
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(String.format("Unexpected end of archive at offset %d", position));
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes a new archive file, gamesPerBlock games to a block
+     */
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final int gamesPerBlock;
+        private final Deflater deflater;
+        private final Gson gson = new Gson();
+        private final Map<Integer, Long> blockIndex = new HashMap<>();
+        private final List<Integer> pendingGameIDs = new ArrayList<>();
+        private final ByteArrayOutputStream pendingEntries = new ByteArrayOutputStream();
+        private long uncompressedBytes;
+        private long compressedBytes;
+
+        public Writer(Path file) throws IOException {
+            this(file, DEFAULT_GAMES_PER_BLOCK, Deflater.BEST_COMPRESSION);
+        }
+
+        public Writer(Path file, int gamesPerBlock, int compressionLevel) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.gamesPerBlock = gamesPerBlock;
+            this.deflater = new Deflater(compressionLevel);
+            write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip());
+        }
+
+        public void add(GameData gameData, List<ChessMove> moves) throws IOException {
+            List<Integer> packedMoves = moves.stream().map(ChessMove::pack).toList();
+            byte[] entry = gson.toJson(new ArchivedGame(gameData, packedMoves))
+                    .getBytes(StandardCharsets.UTF_8);
+            ByteBuffer entryHeader = ByteBuffer.allocate(2 * Integer.BYTES).putInt(gameData.gameID()).putInt(entry.length);
+            pendingEntries.write(entryHeader.array());
+            pendingEntries.write(entry);
+            pendingGameIDs.add(gameData.gameID());
+            if (pendingGameIDs.size() >= gamesPerBlock) {
+                writeBlock();
+            }
+        }
+
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        /**
+         * Writes the last partial block, the index and the trailer
+         */
+        public void close() throws IOException {
+            try {
+                writeBlock();
+                long indexOffset = channel.position();
+                ByteBuffer index = ByteBuffer.allocate(Integer.BYTES + blockIndex.size() * (Integer.BYTES + Long.BYTES));
+                index.putInt(blockIndex.size());
+                for (var entry : blockIndex.entrySet()) {
+                    index.putInt(entry.getKey()).putLong(entry.getValue());
+                }
+                write(index.flip());
+                write(ByteBuffer.allocate(TRAILER_BYTES).putLong(indexOffset).putInt(MAGIC).flip());
+                channel.force(true);
+            } finally {
+                deflater.end();
+                channel.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (pendingGameIDs.isEmpty()) {
+                return;
+            }
+            byte[] entries = pendingEntries.toByteArray();
+            deflater.reset();
+            deflater.setInput(entries);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(entries.length / 4 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            byte[] compressedEntries = compressed.toByteArray();
+            CRC32C crc = new CRC32C();
+            crc.update(compressedEntries);
+
+            long blockOffset = channel.position();
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES).putInt(pendingGameIDs.size())
+                    .putInt(entries.length).putInt(compressedEntries.length).putInt((int) crc.getValue());
+            write(header.flip());
+            write(ByteBuffer.wrap(compressedEntries));
+            for (int gameID : pendingGameIDs) {
+                blockIndex.put(gameID, blockOffset);
+            }
+
+            uncompressedBytes += entries.length;
+            compressedBytes += compressedEntries.length;
+            pendingGameIDs.clear();
+            pendingEntries.reset();
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package dataaccess;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 import static java.sql.Types.NULL;
@@ -11,6 +16,10 @@ public class DatabaseManager {
     private static final String USER;
     private static final String PASSWORD;
     private static final String CONNECTION_URL;
+    // caps open connections by permit rather than by how many threads happen to be running
+    private static final Semaphore CONNECTION_PERMITS;
+    // connection of the transaction running on this thread, which nested calls reuse
+    private static final ThreadLocal<Connection> CURRENT_TRANSACTION = new ThreadLocal<>();
 
     /*
      * Load the database information for the db.properties file.
@@ -29,7 +38,9 @@ public class DatabaseManager {
 
                 var host = props.getProperty("db.host");
                 var port = Integer.parseInt(props.getProperty("db.port"));
-                CONNECTION_URL = String.format("jdbc:mysql://%s:%d", host, port);
+                // lets the driver send a whole executeBatch as multi-row statements in one round trip
+                CONNECTION_URL = String.format("jdbc:mysql://%s:%d?rewriteBatchedStatements=true", host, port);
+                CONNECTION_PERMITS = new Semaphore(Integer.parseInt(props.getProperty("db.maxConnections", "32")), true);
             }
         } catch (Exception ex) {
             throw new RuntimeException("unable to process db.properties. " + ex.getMessage());
@@ -62,17 +73,118 @@ public class DatabaseManager {
      * // execute SQL statements.
      * }
      * </code>
+     * At most db.maxConnections connections are open at once; callers past that wait for
+     * one to be closed. Inside {@link #inTransaction} this returns the transaction's connection.
      */
     static Connection getConnection() throws DataAccessException {
+        Connection transaction = CURRENT_TRANSACTION.get();
+        if (transaction != null) {
+            return joiningTransaction(transaction);
+        }
+        try {
+            CONNECTION_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("interrupted while waiting for a database connection");
+        }
         try {
             var conn = DriverManager.getConnection(CONNECTION_URL, USER, PASSWORD);
             conn.setCatalog(DATABASE_NAME);
-            return conn;
-        } catch (SQLException e) {
+            return releasingOnClose(conn);
+        } catch (SQLException | RuntimeException e) {
+            CONNECTION_PERMITS.release();
             throw new DataAccessException(e.getMessage());
         }
     }
 
+    /**
+     * Wraps a connection so that closing it also gives its permit back, exactly once
+     */
+    private static Connection releasingOnClose(Connection conn) {
+        var released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        try {
+                            conn.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) {
+                                CONNECTION_PERMITS.release();
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Wraps the running transaction's connection so that code written for a connection of its
+     * own cannot close or commit it; only {@link #inTransaction} ends the transaction
+     */
+    private static Connection joiningTransaction(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close", "commit", "rollback", "setAutoCommit" -> {
+                            return null;
+                        }
+                        default -> {
+                            try {
+                                return method.invoke(conn, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Runs work in one transaction, committing if it returns and rolling back if it throws.
+     * Every statement the work runs through this class, directly or via the MySQL data access
+     * objects, uses the same connection. A transaction started inside another joins it.
+     * Anything the work defers through {@link AfterCommit} runs once the commit succeeds.
+     */
+    static <T> T inTransaction(TransactionManager.Work<T> work) throws DataAccessException {
+        if (CURRENT_TRANSACTION.get() != null) {
+            return work.run();
+        }
+        T result;
+        boolean committed = false;
+        AfterCommit.begin();
+        try (var conn = getConnection()) {
+            conn.setAutoCommit(false);
+            CURRENT_TRANSACTION.set(conn);
+            try {
+                result = work.run();
+                conn.commit();
+                committed = true;
+            } catch (DataAccessException | RuntimeException ex) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    ex.addSuppressed(rollbackEx);
+                }
+                throw ex;
+            } finally {
+                CURRENT_TRANSACTION.remove();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(String.format("unable to run transaction: %s", e.getMessage()));
+        } finally {
+            List<AfterCommit.Action> afterCommit = AfterCommit.end();
+            if (committed) {
+                AfterCommit.runAll(afterCommit);
+            }
+        }
+        return result;
+    }
+
     private static final String[] CREATE_STATEMENTS = {
             """
             CREATE TABLE IF NOT EXISTS users (
@@ -80,7 +192,8 @@ public class DatabaseManager {
               `username` varchar(256) NOT NULL,
               `hashedpassword` varchar(256) NOT NULL,
               `email` varchar(256) NOT NULL,
-              PRIMARY KEY (`userid`)
+              PRIMARY KEY (`userid`),
+              KEY (`username`)
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
             """,
             """
@@ -88,7 +201,13 @@ public class DatabaseManager {
               `authid` int NOT NULL AUTO_INCREMENT,
               `userid` int NOT NULL,
               `authtoken` varchar(256) NOT NULL,
-              PRIMARY KEY (`authid`)
+              `issuedat` bigint NOT NULL DEFAULT 0,
+              `lastused` bigint NOT NULL DEFAULT 0,
+              PRIMARY KEY (`authid`),
+              UNIQUE KEY (`authtoken`),
+              KEY (`userid`),
+              KEY (`lastused`),
+              KEY (`issuedat`)
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
             """,
             """
@@ -98,11 +217,64 @@ public class DatabaseManager {
               `blackusername` varchar(256) DEFAULT NULL,
               `gamename` varchar(256) NOT NULL,
               `gamejson` TEXT NOT NULL,
+              `snapshotseq` int NOT NULL DEFAULT 0,
+              `gameover` tinyint(1) NOT NULL DEFAULT 0,
+              `version` int NOT NULL DEFAULT 0,
               PRIMARY KEY (`gameid`)
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS game_moves (
+              `gameid` int NOT NULL,
+              `seq` int NOT NULL,
+              `move` smallint NOT NULL,
+              PRIMARY KEY (`gameid`, `seq`)
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
             """
     };
 
+    /**
+     * A change to a table made after the table was first created, for databases created before
+     * it. appliedQuery finds a row in information_schema once the change has been made.
+     */
+    private record Migration(String appliedQuery, String table, String column, String... statements) {
+        static Migration addColumn(String table, String column, String... statements) {
+            return new Migration("""
+                    SELECT 1 FROM information_schema.COLUMNS
+                    WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=? AND COLUMN_NAME=?
+                    """, table, column, statements);
+        }
+
+        static Migration addUniqueKey(String table, String column, String... statements) {
+            return new Migration("""
+                    SELECT 1 FROM information_schema.STATISTICS
+                    WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=? AND COLUMN_NAME=? AND NON_UNIQUE=0
+                    """, table, column, statements);
+        }
+    }
+
+    private static final Migration[] MIGRATIONS = {
+            // duplicate tokens have to go before the key can be added; the oldest row of each is kept
+            Migration.addUniqueKey("auths", "authtoken",
+                    "DELETE a FROM auths a JOIN auths b ON a.authtoken = b.authtoken AND a.authid > b.authid",
+                    "ALTER TABLE auths ADD UNIQUE KEY (`authtoken`)"),
+            // older games were saved whole after every move, so their snapshot already holds every move
+            Migration.addColumn("games", "snapshotseq",
+                    "ALTER TABLE games ADD COLUMN `snapshotseq` int NOT NULL DEFAULT 0"),
+            Migration.addColumn("games", "gameover",
+                    "ALTER TABLE games ADD COLUMN `gameover` tinyint(1) NOT NULL DEFAULT 0",
+                    "UPDATE games SET gameover=1 WHERE JSON_EXTRACT(gamejson, '$.gameOver') = CAST('true' AS JSON)"),
+            Migration.addColumn("games", "version",
+                    "ALTER TABLE games ADD COLUMN `version` int NOT NULL DEFAULT 0"),
+            // existing sessions count from the upgrade, or the sweeper would expire them all at once
+            Migration.addColumn("auths", "issuedat",
+                    "ALTER TABLE auths ADD COLUMN `issuedat` bigint NOT NULL DEFAULT 0, ADD KEY (`issuedat`)",
+                    "UPDATE auths SET issuedat=FLOOR(UNIX_TIMESTAMP(NOW(3)) * 1000)"),
+            Migration.addColumn("auths", "lastused",
+                    "ALTER TABLE auths ADD COLUMN `lastused` bigint NOT NULL DEFAULT 0, ADD KEY (`lastused`)",
+                    "UPDATE auths SET lastused=FLOOR(UNIX_TIMESTAMP(NOW(3)) * 1000)"),
+    };
+
     static void configureDatabase() throws DataAccessException {
         createDatabase();
         try (var conn = getConnection()) {
@@ -111,37 +283,96 @@ public class DatabaseManager {
                     preparedStatement.executeUpdate();
                 }
             }
+            for (var migration : MIGRATIONS) {
+                if (!isApplied(conn, migration)) {
+                    for (var statement : migration.statements()) {
+                        try (var preparedStatement = conn.prepareStatement(statement)) {
+                            preparedStatement.executeUpdate();
+                        }
+                    }
+                }
+            }
         } catch (SQLException ex) {
             throw new DataAccessException(String.format("Unable to configure database: %s", ex.getMessage()));
         }
     }
 
-    static int executeUpdate(String statement, Object... params) throws DataAccessException {
+    private static boolean isApplied(Connection conn, Migration migration) throws SQLException {
+        try (var ps = conn.prepareStatement(migration.appliedQuery())) {
+            ps.setString(1, migration.table());
+            ps.setString(2, migration.column());
+            try (var rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Runs an insert and returns the key it generated, or 0 if it generated none
+     */
+    static int executeInsert(String statement, Object... params) throws DataAccessException {
         try (var conn = getConnection()) {
             try (var ps = conn.prepareStatement(statement, RETURN_GENERATED_KEYS)) {
-                return processParams(ps, params);
+                setParams(ps, params);
+                ps.executeUpdate();
+                try (var rs = ps.getGeneratedKeys()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(String.format("unable to update database: %s, %s", statement, e.getMessage()));
+        }
+    }
+
+    /**
+     * Runs an update or delete and reports how many rows it matched, so callers can
+     * tell whether a compare-and-set succeeded.
+     */
+    static int executeUpdate(String statement, Object... params) throws DataAccessException {
+        try (var conn = getConnection()) {
+            try (var ps = conn.prepareStatement(statement)) {
+                setParams(ps, params);
+                return ps.executeUpdate();
             }
         } catch (SQLException e) {
             throw new DataAccessException(String.format("unable to update database: %s, %s", statement, e.getMessage()));
         }
     }
 
-    private static int processParams(PreparedStatement ps, Object... params) throws SQLException {
+    /**
+     * Runs one statement once per parameter set as a single JDBC batch in one transaction,
+     * and returns the update count of each
+     */
+    static int[] executeBatch(String statement, List<Object[]> paramSets) throws DataAccessException {
+        if (paramSets.isEmpty()) {
+            return new int[0];
+        }
+        return inTransaction(() -> {
+            try (var conn = getConnection()) {
+                try (var ps = conn.prepareStatement(statement)) {
+                    for (Object[] params : paramSets) {
+                        setParams(ps, params);
+                        ps.addBatch();
+                    }
+                    return ps.executeBatch();
+                }
+            } catch (SQLException e) {
+                throw new DataAccessException(String.format("unable to update database: %s, %s", statement, e.getMessage()));
+            }
+        });
+    }
+
+    private static void setParams(PreparedStatement ps, Object... params) throws SQLException {
         for (var i = 0; i < params.length; i++) {
             var param = params[i];
             switch (param) {
                 case String p -> ps.setString(i + 1, p);
                 case Integer p -> ps.setInt(i + 1, p);
+                case Long p -> ps.setLong(i + 1, p);
+                case Boolean p -> ps.setBoolean(i + 1, p);
                 case null -> ps.setNull(i + 1, NULL);
                 default -> {}
             }
         }
-        ps.executeUpdate();
-
-        var rs = ps.getGeneratedKeys();
-        if (rs.next()) {
-            return rs.getInt(1);
-        }
-        return 0;
     }
 }
@@ -0,0 +1,584 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.InvalidMoveException;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import dataaccess.MemoryAuthDataAccess.StoredAuth;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps users, auths and games in the memory DAOs and makes them survive restarts.
+ * <p>
+ * Every mutation is appended to a WriteAheadLog and applied in memory only once its record
+ * is on disk. That covers what this store changes itself, not objects callers already share
+ * with it: a move shows up early if the caller made it on the stored board instead of on a
+ * copy, as does a game marked over by GameService before it calls endGame. WSServer moves on
+ * a copy, which recordMove swaps in once logged. Records are applied in log order,
+ * including ones whose mutation turns out to be rejected, which replay rejects the same way,
+ * so memory always matches what replaying the log would rebuild. Once enough records pile up,
+ * the whole state is written to a snapshot and the log moves on to a new segment. On startup
+ * the newest intact snapshot is loaded and the segments written after it are replayed.
+ */
+public class DurableMemoryStore implements AutoCloseable {
+    private static final int DEFAULT_SNAPSHOT_EVERY = 10_000;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final MemoryUserDataAccess users = new MemoryUserDataAccess();
+    private final MemoryAuthDataAccess auths = new MemoryAuthDataAccess();
+    private final MemoryGameDataAccess games = new MemoryGameDataAccess();
+    private final Gson gson = new Gson();
+    private final WriteAheadLog log;
+    // held while queueing a record, so nothing is logged while a snapshot is taken; Locks rather
+    // than monitors, since snapshots hold them while forcing the log to disk
+    private final ReentrantLock logLock = new ReentrantLock();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    // held while applying a record, which waits here for every earlier record to be applied first
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final Condition applied = applyLock.newCondition();
+    // the last record queued, guarded by logLock, and the last one applied or dropped, guarded by applyLock
+    private long lastQueuedSeq;
+    private long lastAppliedSeq;
+    private final ExecutorService snapshotter;
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+    private int recordsSinceSnapshot;
+
+    private enum Kind {
+        ADD_USER, UPDATE_PASSWORD, CLEAR_USERS, CREATE_AUTH, DELETE_AUTH, CLEAR_AUTHS,
+        CREATE_GAME, DELETE_GAME, CLEAR_GAMES, JOIN_GAME, LEAVE_GAME, UPDATE_GAME, RECORD_MOVES, END_GAME
+    }
+
+    /**
+     * One logged mutation; only the fields its kind needs are set
+     */
+    private record LogRecord(Kind kind, UserData user, StoredAuth auth, GameData game, int gameID,
+                             ChessGame.TeamColor color, String username, int firstSeq, List<Integer> moves) {
+        static LogRecord of(Kind kind) {
+            return new LogRecord(kind, null, null, null, 0, null, null, 0, null);
+        }
+
+        static LogRecord ofUser(Kind kind, UserData user) {
+            return new LogRecord(kind, user, null, null, 0, null, null, 0, null);
+        }
+
+        static LogRecord ofAuth(Kind kind, StoredAuth auth) {
+            return new LogRecord(kind, null, auth, null, 0, null, null, 0, null);
+        }
+
+        static LogRecord ofGame(Kind kind, GameData game) {
+            return new LogRecord(kind, null, null, game, game.gameID(), null, null, 0, null);
+        }
+
+        static LogRecord ofSeat(Kind kind, int gameID, ChessGame.TeamColor color, String username) {
+            return new LogRecord(kind, null, null, null, gameID, color, username, 0, null);
+        }
+
+        static LogRecord ofMoves(int gameID, int firstSeq, List<ChessMove> moves) {
+            return new LogRecord(Kind.RECORD_MOVES, null, null, null, gameID, null, null, firstSeq,
+                    moves.stream().map(ChessMove::pack).toList());
+        }
+
+        static LogRecord ofGameID(Kind kind, int gameID) {
+            return new LogRecord(kind, null, null, null, gameID, null, null, 0, null);
+        }
+    }
+
+    private record Snapshot(List<UserData> users, List<StoredAuth> auths, List<JsonElement> games, int nextGameID) {
+    }
+
+    private record SnapshotGame(GameData gameData, List<Integer> moves) {
+    }
+
+    private interface Mutation<T> {
+        T apply() throws DataAccessException;
+    }
+
+    public DurableMemoryStore(Path directory) throws DataAccessException {
+        this(directory, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    public DurableMemoryStore(Path directory, int snapshotEvery) throws DataAccessException {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        try {
+            Files.createDirectories(directory);
+            int firstSegment = loadNewestSnapshot();
+            int lastSegment = firstSegment;
+            for (int segment : WriteAheadLog.listSegments(directory)) {
+                if (segment >= firstSegment) {
+                    WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, segment), this::replayRecord);
+                    lastSegment = segment;
+                }
+            }
+            this.log = new WriteAheadLog(directory, lastSegment);
+            deleteFilesBefore(firstSegment);
+        } catch (IOException | RuntimeException ex) {
+            throw new DataAccessException(String.format("Unable to recover data from %s: %s", directory, ex.getMessage()));
+        }
+        this.snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public UserDataAccess userDataAccess() {
+        return new DurableUserDataAccess();
+    }
+
+    public AuthDataAccess authDataAccess() {
+        return new DurableAuthDataAccess();
+    }
+
+    public GameDataAccess gameDataAccess() {
+        return new DurableGameDataAccess();
+    }
+
+    /**
+     * Writes the current state to a new snapshot and discards the log segments it covers
+     */
+    public void snapshot() throws DataAccessException {
+        snapshotLock.lock();
+        try {
+            Snapshot snapshot;
+            List<SnapshotGame> capturedGames = new ArrayList<>();
+            int segment;
+            try {
+                logLock.lock();
+                try {
+                    segment = log.roll();
+                    awaitApplied(lastQueuedSeq);
+                    snapshot = captureState(capturedGames);
+                    recordsSinceSnapshot = 0;
+                } finally {
+                    logLock.unlock();
+                }
+                // boards are serialized outside logLock; a move replaces a stored board rather than changing it
+                for (SnapshotGame capturedGame : capturedGames) {
+                    snapshot.games().add(gson.toJsonTree(capturedGame));
+                }
+                writeSnapshot(segment, gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+                deleteFilesBefore(segment);
+            } catch (IOException ex) {
+                throw new DataAccessException(String.format("Unable to write snapshot: %s", ex.getMessage()));
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a final snapshot so the next startup has nothing to replay, then closes the log
+     */
+    public void close() throws DataAccessException {
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        } finally {
+            try {
+                log.close();
+            } catch (IOException ex) {
+                throw new DataAccessException(String.format("Unable to close log: %s", ex.getMessage()));
+            }
+        }
+    }
+
+    private <T> T apply(Mutation<T> mutation, LogRecord logRecord) throws DataAccessException {
+        byte[] payload = gson.toJson(logRecord).getBytes(StandardCharsets.UTF_8);
+        long seq;
+        boolean snapshotDue;
+        logLock.lock();
+        try {
+            seq = log.enqueue(payload);
+            lastQueuedSeq = seq;
+            snapshotDue = ++recordsSinceSnapshot >= snapshotEvery;
+        } finally {
+            logLock.unlock();
+        }
+        IOException failure = null;
+        try {
+            log.awaitDurable(seq);
+        } catch (IOException ex) {
+            failure = ex;
+        }
+
+        T result = null;
+        applyLock.lock();
+        try {
+            awaitApplied(seq - 1);
+            // a record that failed to write was cut from the log, so it is dropped here too
+            if (failure == null) {
+                result = mutation.apply();
+            }
+        } finally {
+            lastAppliedSeq = seq;
+            applied.signalAll();
+            applyLock.unlock();
+        }
+        if (failure != null) {
+            throw new DataAccessException(String.format("Unable to write log: %s", failure.getMessage()));
+        }
+        if (snapshotDue && snapshotQueued.compareAndSet(false, true)) {
+            snapshotter.execute(this::snapshotQuietly);
+        }
+        return result;
+    }
+
+    /**
+     * Waits until every record up to seq has been applied or dropped
+     */
+    private void awaitApplied(long seq) {
+        applyLock.lock();
+        try {
+            while (lastAppliedSeq < seq) {
+                applied.awaitUninterruptibly();
+            }
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    private void snapshotQuietly() {
+        snapshotQueued.set(false);
+        try {
+            snapshot();
+        } catch (DataAccessException | RuntimeException ex) {
+            System.err.printf("Unable to snapshot, the log will keep growing: %s%n", ex.getMessage());
+        }
+    }
+
+    /**
+     * Copies everything but the boards, which may still gain moves that are logged after this
+     * point; replayMoves skips those when the snapshot is loaded
+     */
+    private Snapshot captureState(List<SnapshotGame> capturedGames) {
+        for (GameData gameData : games.listAllGames()) {
+            List<Integer> moves = games.listMoves(gameData.gameID()).stream().map(ChessMove::pack).toList();
+            capturedGames.add(new SnapshotGame(gameData, moves));
+        }
+        return new Snapshot(new ArrayList<>(users.listAllUsers()), new ArrayList<>(auths.listAllAuths()),
+                new ArrayList<>(), games.nextGameID());
+    }
+
+    private void writeSnapshot(int segment, byte[] state) throws IOException {
+        Path temporary = directory.resolve(snapshotName(segment) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer frame = WriteAheadLog.frame(state);
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(snapshotName(segment)), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the newest snapshot that passes its checksum and returns the first log segment
+     * that still has to be replayed on top of it
+     */
+    private int loadNewestSnapshot() throws IOException {
+        List<Integer> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            int segment = snapshots.get(i);
+            byte[] state;
+            try (FileChannel channel = FileChannel.open(directory.resolve(snapshotName(segment)))) {
+                state = WriteAheadLog.readFrame(channel);
+            }
+            if (state != null) {
+                restoreState(gson.fromJson(new String(state, StandardCharsets.UTF_8), Snapshot.class));
+                return segment;
+            }
+        }
+        List<Integer> segments = WriteAheadLog.listSegments(directory);
+        return segments.isEmpty() ? 0 : segments.get(0);
+    }
+
+    private void restoreState(Snapshot snapshot) {
+        for (UserData user : snapshot.users()) {
+            try {
+                users.addUser(user);
+            } catch (DataAccessException ex) {
+                throw new IllegalStateException(String.format("duplicate user %s in snapshot", user.username()));
+            }
+        }
+        for (StoredAuth auth : snapshot.auths()) {
+            auths.addAuth(auth);
+        }
+        for (JsonElement gameState : snapshot.games()) {
+            SnapshotGame snapshotGame = gson.fromJson(gameState, SnapshotGame.class);
+            games.restoreGame(snapshotGame.gameData(), snapshotGame.moves().stream().map(ChessMove::unpack).toList());
+        }
+        games.advanceNextGameID(snapshot.nextGameID());
+    }
+
+    private void replayRecord(byte[] payload) {
+        LogRecord logRecord = gson.fromJson(new String(payload, StandardCharsets.UTF_8), LogRecord.class);
+        try {
+            switch (logRecord.kind()) {
+                case ADD_USER -> users.addUser(logRecord.user());
+                case UPDATE_PASSWORD -> users.updatePassword(logRecord.user().username(), logRecord.user().password());
+                case CLEAR_USERS -> users.deleteAllUsers();
+                case CREATE_AUTH -> auths.addAuth(logRecord.auth());
+                case DELETE_AUTH -> auths.deleteAuth(logRecord.auth().authToken());
+                case CLEAR_AUTHS -> auths.deleteAllAuths();
+                case CREATE_GAME -> games.restoreGame(logRecord.game(), List.of());
+                case DELETE_GAME -> games.deleteGame(logRecord.gameID());
+                case CLEAR_GAMES -> games.deleteAllGames();
+                case JOIN_GAME -> games.joinGame(logRecord.color(), logRecord.gameID(), logRecord.username());
+                case LEAVE_GAME -> games.leaveGame(logRecord.color(), logRecord.gameID());
+                case UPDATE_GAME -> games.updateGame(logRecord.game());
+                case RECORD_MOVES -> replayMoves(logRecord);
+                case END_GAME -> games.endGame(logRecord.gameID());
+            }
+        } catch (DataAccessException ex) {
+            // records are logged before they are applied, so one rejected then is rejected again here
+        } catch (InvalidMoveException ex) {
+            throw new IllegalStateException(String.format("Unable to replay %s: %s", logRecord.kind(), ex.getMessage()));
+        }
+    }
+
+    private void replayMoves(LogRecord logRecord) throws DataAccessException, InvalidMoveException {
+        GameData gameData = games.getGame(logRecord.gameID());
+        if (gameData == null) {
+            throw new DataAccessException("bad request");
+        }
+        // a snapshot's board can already hold moves whose records were written just after it, so skip those
+        int seq = logRecord.firstSeq();
+        for (int packedMove : logRecord.moves()) {
+            ChessMove move = ChessMove.unpack(packedMove);
+            if (gameData.game().getMoveCount() < seq) {
+                gameData.game().makeMove(move);
+            }
+            if (games.listMoves(gameData.gameID()).size() < seq) {
+                games.recordMove(gameData, move);
+            }
+            seq++;
+        }
+    }
+
+    private List<Integer> listSnapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(SNAPSHOT_PREFIX.length(),
+                            name.length() - SNAPSHOT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void deleteFilesBefore(int segment) throws IOException {
+        for (int oldSegment : WriteAheadLog.listSegments(directory)) {
+            if (oldSegment < segment) {
+                Files.deleteIfExists(WriteAheadLog.segmentPath(directory, oldSegment));
+            }
+        }
+        for (int oldSnapshot : listSnapshots()) {
+            if (oldSnapshot < segment) {
+                Files.deleteIfExists(directory.resolve(snapshotName(oldSnapshot)));
+            }
+        }
+    }
+
+    private static String snapshotName(int segment) {
+        return String.format("%s%08d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX);
+    }
+
+    private class DurableUserDataAccess implements UserDataAccess {
+        public UserData getUser(String username) {
+            return users.getUser(username);
+        }
+
+        public void addUser(UserData user) throws DataAccessException {
+            apply(() -> {
+                users.addUser(user);
+                return null;
+            }, LogRecord.ofUser(Kind.ADD_USER, user));
+        }
+
+        public void updatePassword(String username, String hashedPassword) throws DataAccessException {
+            apply(() -> {
+                users.updatePassword(username, hashedPassword);
+                return null;
+            }, LogRecord.ofUser(Kind.UPDATE_PASSWORD, new UserData(username, hashedPassword, null)));
+        }
+
+        public void deleteAllUsers() throws DataAccessException {
+            apply(() -> {
+                users.deleteAllUsers();
+                return null;
+            }, LogRecord.of(Kind.CLEAR_USERS));
+        }
+
+        public int getNumUsers() {
+            return users.getNumUsers();
+        }
+    }
+
+    private class DurableAuthDataAccess implements AuthDataAccess {
+        public AuthData createAuth(String username) throws DataAccessException {
+            if (username == null) {
+                throw new DataAccessException("bad request");
+            }
+            // the token and times are chosen up front, since the record has to be written before the auth exists
+            long now = System.currentTimeMillis();
+            StoredAuth auth = new StoredAuth(UUID.randomUUID().toString(), username, now, now);
+            return apply(() -> {
+                auths.addAuth(auth);
+                return auth.authData();
+            }, LogRecord.ofAuth(Kind.CREATE_AUTH, auth));
+        }
+
+        public AuthData retrieveAuthByAuthToken(String authToken) {
+            return auths.retrieveAuthByAuthToken(authToken);
+        }
+
+        public AuthData retrieveAuthByUsername(String username) {
+            return auths.retrieveAuthByUsername(username);
+        }
+
+        public void deleteAuth(String authToken) throws DataAccessException {
+            apply(() -> {
+                auths.deleteAuth(authToken);
+                return null;
+            }, LogRecord.ofAuth(Kind.DELETE_AUTH, new StoredAuth(authToken, null, 0, 0)));
+        }
+
+        public void deleteAllAuths() throws DataAccessException {
+            apply(() -> {
+                auths.deleteAllAuths();
+                return null;
+            }, LogRecord.of(Kind.CLEAR_AUTHS));
+        }
+
+        public int deleteExpiredAuths(long idleCutoff, long absoluteCutoff, int limit) throws DataAccessException {
+            // each use of a session is not logged, only its times as of the last snapshot, so expiry
+            // is decided here and each purge is logged as a logout
+            List<String> expiredTokens = auths.findExpiredTokens(idleCutoff, absoluteCutoff, limit);
+            for (String authToken : expiredTokens) {
+                deleteAuth(authToken);
+            }
+            return expiredTokens.size();
+        }
+
+        public int retrieveNumAuths() {
+            return auths.retrieveNumAuths();
+        }
+    }
+
+    private class DurableGameDataAccess implements GameDataAccess {
+        public GameData createGame(String gameName) throws DataAccessException {
+            if (gameName == null) {
+                throw new DataAccessException("bad request");
+            }
+            GameData game = new GameData(games.reserveGameID(), null, null, gameName, new ChessGame());
+            return apply(() -> {
+                games.restoreGame(game, List.of());
+                return game;
+            }, LogRecord.ofGame(Kind.CREATE_GAME, game));
+        }
+
+        public GameData getGame(int gameID) {
+            return games.getGame(gameID);
+        }
+
+        public void deleteGame(int gameID) throws DataAccessException {
+            apply(() -> {
+                games.deleteGame(gameID);
+                return null;
+            }, LogRecord.ofGameID(Kind.DELETE_GAME, gameID));
+        }
+
+        public void deleteAllGames() throws DataAccessException {
+            apply(() -> {
+                games.deleteAllGames();
+                return null;
+            }, LogRecord.of(Kind.CLEAR_GAMES));
+        }
+
+        public Collection<GameData> listAllGames() {
+            return games.listAllGames();
+        }
+
+        public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
+            apply(() -> {
+                games.joinGame(color, gameID, username);
+                return null;
+            }, LogRecord.ofSeat(Kind.JOIN_GAME, gameID, color, username));
+        }
+
+        public void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+            apply(() -> {
+                games.leaveGame(color, gameID);
+                return null;
+            }, LogRecord.ofSeat(Kind.LEAVE_GAME, gameID, color, null));
+        }
+
+        public void updateGame(GameData gameData) throws DataAccessException {
+            apply(() -> {
+                games.updateGame(gameData);
+                return null;
+            }, LogRecord.ofGame(Kind.UPDATE_GAME, gameData));
+        }
+
+        public void recordMove(GameData gameData, ChessMove move) throws DataAccessException {
+            int seq = gameData.game().getMoveCount();
+            apply(() -> {
+                games.recordMove(gameData, move);
+                return null;
+            }, LogRecord.ofMoves(gameData.gameID(), seq, List.of(move)));
+        }
+
+        public void recordMoves(Collection<MoveBatch> batches) throws DataAccessException {
+            for (MoveBatch batch : batches) {
+                apply(() -> {
+                    games.recordMoves(List.of(batch));
+                    return null;
+                }, LogRecord.ofMoves(batch.gameID(), batch.firstSeq(), batch.moves()));
+            }
+        }
+
+        public void endGame(int gameID) throws DataAccessException {
+            apply(() -> {
+                games.endGame(gameID);
+                return null;
+            }, LogRecord.ofGameID(Kind.END_GAME, gameID));
+        }
+
+        public List<ChessMove> listMoves(int gameID) {
+            return games.listMoves(gameID);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import com.google.gson.Gson;
+import model.GameData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only store of finished games in memory-mapped segment files.
+ * <p>
+ * Each game is written once as a checksummed record and located through an in-memory
+ * index of gameID to segment and offset, which is rebuilt by scanning the segments on
+ * open. Reads decode straight from a slice of the mapping. Changing an archived game
+ * appends a new record and points the index at it; the old record is left in place.
+ * <p>
+ * The index also keeps each game's players, name and packed position, a few dozen bytes a
+ * game, so listing the archive never reads records back or parses their JSON.
+ */
+class GameArchive implements AutoCloseable {
+    private static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final Gson gson = new Gson();
+    private final ConcurrentHashMap<Integer, Location> index = new ConcurrentHashMap<>();
+    // a Lock rather than a monitor, since appends wait on the disk and must not pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock; readers only touch mappings already published through the index
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int writePosition;
+
+    private record Location(int segment, int offset, int length, Summary summary) {
+    }
+
+    /**
+     * What a listing shows of an archived game, with the board as its {@link ChessGame#pack} position
+     */
+    private record Summary(int gameID, String whiteUsername, String blackUsername, String gameName,
+                           byte[] position, int version) {
+        static Summary of(GameData gameData) {
+            byte[] position = null;
+            if (gameData.game() != null) {
+                ByteBuffer packed = ByteBuffer.allocate(ChessGame.PACKED_SIZE);
+                gameData.game().pack(packed);
+                position = packed.array();
+            }
+            return new Summary(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
+                    gameData.gameName(), position, gameData.version());
+        }
+
+        GameData gameData() {
+            ChessGame game = position == null ? null : ChessGame.unpack(ByteBuffer.wrap(position));
+            return new GameData(gameID, whiteUsername, blackUsername, gameName, game, version);
+        }
+    }
+
+    GameArchive(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    GameArchive(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        for (int segment : listSegments()) {
+            MappedByteBuffer mapping = map(segment, 0);
+            segments.add(mapping);
+            writePosition = scan(segments.size() - 1, mapping);
+        }
+    }
+
+    void append(GameData gameData, List<ChessMove> moves) throws IOException {
+        List<Integer> packedMoves = moves.stream().map(ChessMove::pack).toList();
+        byte[] payload = gson.toJson(new ArchivedGame(gameData, packedMoves)).getBytes(StandardCharsets.UTF_8);
+        int recordBytes = HEADER_BYTES + payload.length;
+
+        lock.lock();
+        try {
+            appendRecord(Summary.of(gameData), payload, recordBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendRecord(Summary summary, byte[] payload, int recordBytes) throws IOException {
+        // leave room for the zero length that marks where a segment's records end
+        if (segments.isEmpty() || writePosition + recordBytes + Integer.BYTES > segments.get(segments.size() - 1).capacity()) {
+            segments.add(map(segments.size(), recordBytes + Integer.BYTES));
+            writePosition = 0;
+        }
+        MappedByteBuffer mapping = segments.get(segments.size() - 1);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        mapping.put(writePosition + HEADER_BYTES, payload);
+        mapping.putInt(writePosition + Integer.BYTES, (int) crc.getValue());
+        mapping.putInt(writePosition, payload.length);
+        mapping.force();
+
+        index.put(summary.gameID(), new Location(segments.size() - 1, writePosition + HEADER_BYTES, payload.length,
+                summary));
+        writePosition += recordBytes;
+    }
+
+    boolean contains(int gameID) {
+        return index.containsKey(gameID);
+    }
+
+    /**
+     * Returns the archived copy of a game, or null if it was never archived
+     */
+    ArchivedGame read(int gameID) {
+        Location location = index.get(gameID);
+        if (location == null) {
+            return null;
+        }
+        MappedByteBuffer mapping;
+        lock.lock();
+        try {
+            mapping = segments.get(location.segment());
+        } finally {
+            lock.unlock();
+        }
+        ByteBuffer slice = mapping.slice(location.offset(), location.length());
+        return gson.fromJson(StandardCharsets.UTF_8.decode(slice).toString(), ArchivedGame.class);
+    }
+
+    /**
+     * Every archived game as of its latest record, rebuilt from the index alone
+     */
+    Collection<GameData> listGames() {
+        Collection<GameData> games = new ArrayList<>();
+        for (Location location : index.values()) {
+            games.add(location.summary().gameData());
+        }
+        return games;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Deletes every archived game
+     */
+    void clear() throws IOException {
+        lock.lock();
+        try {
+            index.clear();
+            segments.clear();
+            writePosition = 0;
+            for (int segment : listSegments()) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            for (MappedByteBuffer mapping : segments) {
+                mapping.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the intact records of a segment and returns the offset just past the last one
+     */
+    private int scan(int segment, MappedByteBuffer mapping) {
+        int position = 0;
+        while (position + HEADER_BYTES <= mapping.capacity()) {
+            int length = mapping.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > mapping.capacity()) {
+                break;
+            }
+            ByteBuffer payload = mapping.slice(position + HEADER_BYTES, length);
+            CRC32C crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != mapping.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            ArchivedGame archivedGame = gson.fromJson(StandardCharsets.UTF_8.decode(payload).toString(), ArchivedGame.class);
+            index.put(archivedGame.gameData().gameID(), new Location(segment, position + HEADER_BYTES, length,
+                    Summary.of(archivedGame.gameData())));
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    /**
+     * Maps a segment file, creating it at the segment size (or larger, if a single record needs it)
+     */
+    private MappedByteBuffer map(int segment, int minimumBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), Math.max(segmentBytes, minimumBytes));
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
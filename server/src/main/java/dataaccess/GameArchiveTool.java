@@ -0,0 +1,91 @@
+package dataaccess;
+
+import model.GameData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Command-line tool that moves games between MySQL and a {@link CompressedGameArchive} file.
+ * <p>
+ * <code>export &lt;file&gt; [gamesPerBlock]</code> writes every game, live or already moved
+ * to the server's archive directory, into a new file.
+ * <code>import &lt;file&gt;</code> inserts every game in the file into MySQL under its
+ * original ID, skipping games whose ID is already taken.
+ */
+public class GameArchiveTool {
+    private static final int IMPORT_GAMES_PER_TRANSACTION = CompressedGameArchive.DEFAULT_GAMES_PER_BLOCK;
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("export") || args[0].equals("import"))) {
+            System.err.println("Usage: GameArchiveTool export <file> [gamesPerBlock] | import <file>");
+            System.exit(2);
+        }
+        Path file = Path.of(args[1]);
+        Path archiveDirectory = Path.of(System.getProperty("chess.dataDir", "chess-data")).resolve("archive");
+        try {
+            if (args[0].equals("export")) {
+                int gamesPerBlock = args.length > 2 ? Integer.parseInt(args[2]) : CompressedGameArchive.DEFAULT_GAMES_PER_BLOCK;
+                try (ArchivingGameDataAccess games = new ArchivingGameDataAccess(new MySQLGameDataAccess(), archiveDirectory)) {
+                    exportGames(games, file, gamesPerBlock);
+                }
+            } else {
+                importGames(new MySQLGameDataAccess(), file);
+            }
+        } catch (DataAccessException | IOException ex) {
+            System.err.printf("%s failed: %s%n", args[0], ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    static void exportGames(GameDataAccess games, Path file, int gamesPerBlock) throws DataAccessException, IOException {
+        int exported = 0;
+        CompressedGameArchive.Writer writer = new CompressedGameArchive.Writer(file, gamesPerBlock, Deflater.BEST_COMPRESSION);
+        List<GameData> allGames = new ArrayList<>(games.listAllGames());
+        allGames.sort(Comparator.comparingInt(GameData::gameID));
+        try (writer) {
+            for (GameData gameData : allGames) {
+                writer.add(gameData, games.listMoves(gameData.gameID()));
+                exported++;
+            }
+        }
+        System.out.printf("Exported %d games to %s: %d bytes of JSON compressed to %d bytes%n",
+                exported, file, writer.getUncompressedBytes(), writer.getCompressedBytes());
+    }
+
+    static void importGames(MySQLGameDataAccess games, Path file) throws DataAccessException, IOException {
+        int[] counts = new int[2];
+        try (CompressedGameArchive archive = CompressedGameArchive.open(file)) {
+            // games were exported in ID order, so walking IDs in order inflates each block once
+            List<Integer> gameIDs = new ArrayList<>(archive.listGameIDs());
+            Collections.sort(gameIDs);
+            // commit a block's worth of games at a time rather than one transaction per game
+            for (int start = 0; start < gameIDs.size(); start += IMPORT_GAMES_PER_TRANSACTION) {
+                List<ArchivedGame> chunk = new ArrayList<>();
+                for (int gameID : gameIDs.subList(start, Math.min(start + IMPORT_GAMES_PER_TRANSACTION, gameIDs.size()))) {
+                    chunk.add(archive.read(gameID));
+                }
+                DatabaseManager.inTransaction(() -> {
+                    for (ArchivedGame archivedGame : chunk) {
+                        try {
+                            games.restoreGame(archivedGame.gameData(), archivedGame.unpackedMoves());
+                            counts[0]++;
+                        } catch (DataAccessException ex) {
+                            if (!ex.getMessage().equals("already taken")) {
+                                throw ex;
+                            }
+                            counts[1]++;
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        System.out.printf("Imported %d games from %s, skipped %d that already exist%n", counts[0], file, counts[1]);
+    }
+}
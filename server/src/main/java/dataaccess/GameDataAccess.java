@@ -1,14 +1,23 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
 import model.GameData;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface GameDataAccess {
     GameData createGame(String gameName) throws DataAccessException;
+    GameData getGame(int gameID) throws DataAccessException;
+    void deleteGame(int gameID) throws DataAccessException;
     void deleteAllGames() throws DataAccessException;
     Collection<GameData> listAllGames() throws DataAccessException;
     void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException;
+    void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException;
     void updateGame(GameData gameData) throws DataAccessException;
+    void recordMove(GameData gameData, ChessMove move) throws DataAccessException;
+    void recordMoves(Collection<MoveBatch> batches) throws DataAccessException;
+    void endGame(int gameID) throws DataAccessException;
+    List<ChessMove> listMoves(int gameID) throws DataAccessException;
 }
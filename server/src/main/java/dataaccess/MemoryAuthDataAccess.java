@@ -2,11 +2,47 @@ package dataaccess;
 
 import model.AuthData;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MemoryAuthDataAccess implements AuthDataAccess {
-    private final HashSet<AuthData> auths = new HashSet<>();
+    private final ConcurrentHashMap<String, Session> authsByToken = new ConcurrentHashMap<>();
+    // a user can be logged in from several places at once, so each username maps to all of its auths
+    private final ConcurrentHashMap<String, Set<AuthData>> authsByUsername = new ConcurrentHashMap<>();
+
+    /**
+     * An auth along with its session times, as written to disk. Its JSON reads back from an
+     * AuthData written before the times were kept, leaving them 0.
+     */
+    record StoredAuth(String authToken, String username, long issuedAt, long lastUsed) {
+        AuthData authData() {
+            return new AuthData(authToken, username);
+        }
+    }
+
+    private static class Session {
+        final AuthData authData;
+        final long issuedAt;
+        volatile long lastUsed;
+
+        Session(AuthData authData) {
+            this(authData, System.currentTimeMillis());
+        }
+
+        Session(AuthData authData, long issuedAt) {
+            this.authData = authData;
+            this.issuedAt = issuedAt;
+            this.lastUsed = issuedAt;
+        }
+
+        StoredAuth stored() {
+            return new StoredAuth(authData.authToken(), authData.username(), issuedAt, lastUsed);
+        }
+    }
 
     public AuthData createAuth(String username) throws DataAccessException {
         if (username == null) {
@@ -17,40 +53,104 @@ public class MemoryAuthDataAccess implements AuthDataAccess {
         AuthData proposedAuth;
         do {
             proposedAuth = new AuthData(UUID.randomUUID().toString(), username);
-        } while (auths.contains(proposedAuth));
+        } while (authsByToken.putIfAbsent(proposedAuth.authToken(), new Session(proposedAuth)) != null);
 
-        // store and return result
-        auths.add(proposedAuth);
+        // index and return result
+        indexByUsername(proposedAuth);
         return proposedAuth;
     }
 
+    /**
+     * Stores an auth whose token was generated elsewhere, such as one being recovered from disk,
+     * keeping its session times; one stored without them counts as issued now
+     */
+    void addAuth(StoredAuth storedAuth) {
+        AuthData authData = storedAuth.authData();
+        Session session = storedAuth.issuedAt() == 0 ? new Session(authData) : new Session(authData, storedAuth.issuedAt());
+        if (storedAuth.lastUsed() > session.lastUsed) {
+            session.lastUsed = storedAuth.lastUsed();
+        }
+        authsByToken.put(authData.authToken(), session);
+        indexByUsername(authData);
+    }
+
+    Collection<StoredAuth> listAllAuths() {
+        return authsByToken.values().stream().map(Session::stored).toList();
+    }
+
     public AuthData retrieveAuthByAuthToken(String authToken) {
-        for (AuthData currAuth : auths) {
-            if (currAuth.authToken().equals(authToken)) {
-                return currAuth;
-            }
+        if (authToken == null) {
+            return null;
         }
-        return null;
+        Session session = authsByToken.get(authToken);
+        if (session == null) {
+            return null;
+        }
+        session.lastUsed = System.currentTimeMillis();
+        return session.authData;
     }
 
     public AuthData retrieveAuthByUsername(String username) {
-        for (AuthData currAuth : auths) {
-            if (currAuth.username().equals(username)) {
-                return currAuth;
-            }
+        if (username == null) {
+            return null;
+        }
+        Set<AuthData> auths = authsByUsername.get(username);
+        if (auths == null) {
+            return null;
         }
-        return null;
+        return auths.stream().findFirst().orElse(null);
     }
 
     public void deleteAuth(String authToken) {
-        auths.removeIf(currAuth -> currAuth.authToken().equals(authToken));
+        if (authToken == null) {
+            return;
+        }
+        Session removedSession = authsByToken.remove(authToken);
+        if (removedSession != null) {
+            AuthData removedAuth = removedSession.authData;
+            authsByUsername.computeIfPresent(removedAuth.username(), (name, auths) -> {
+                auths.remove(removedAuth);
+                return auths.isEmpty() ? null : auths;
+            });
+        }
     }
 
     public void deleteAllAuths() {
-        auths.clear();
+        authsByToken.clear();
+        authsByUsername.clear();
+    }
+
+    public int deleteExpiredAuths(long idleCutoff, long absoluteCutoff, int limit) {
+        List<String> expiredTokens = findExpiredTokens(idleCutoff, absoluteCutoff, limit);
+        for (String authToken : expiredTokens) {
+            deleteAuth(authToken);
+        }
+        return expiredTokens.size();
+    }
+
+    List<String> findExpiredTokens(long idleCutoff, long absoluteCutoff, int limit) {
+        List<String> expiredTokens = new ArrayList<>();
+        for (var entry : authsByToken.entrySet()) {
+            if (expiredTokens.size() >= limit) {
+                break;
+            }
+            Session session = entry.getValue();
+            if (session.lastUsed < idleCutoff || session.issuedAt < absoluteCutoff) {
+                expiredTokens.add(entry.getKey());
+            }
+        }
+        return expiredTokens;
     }
 
     public int retrieveNumAuths() {
-        return auths.size();
+        return authsByToken.size();
+    }
+
+    private void indexByUsername(AuthData authData) {
+        authsByUsername.compute(authData.username(), (name, auths) -> {
+            Set<AuthData> updatedAuths = auths == null ? ConcurrentHashMap.newKeySet() : auths;
+            updatedAuths.add(authData);
+            return updatedAuths;
+        });
     }
 }
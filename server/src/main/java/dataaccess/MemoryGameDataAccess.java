@@ -1,22 +1,27 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
 import model.GameData;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MemoryGameDataAccess implements GameDataAccess {
-    private int nextId = 1;
-    final private HashMap<Integer, GameData> games = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    final private ConcurrentHashMap<Integer, GameData> games = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<Integer, List<ChessMove>> moves = new ConcurrentHashMap<>();
 
     public GameData createGame(String gameName) throws DataAccessException {
         if (gameName == null) {
             throw new DataAccessException("bad request");
         }
         // prepare fields for new GameData
-        int gameID = nextId++;
+        int gameID = nextId.getAndIncrement();
         ChessGame game = new ChessGame();
 
         // create, store, return new GameData
@@ -25,8 +30,18 @@ public class MemoryGameDataAccess implements GameDataAccess {
         return gameData;
     }
 
+    public GameData getGame(int gameID) {
+        return games.get(gameID);
+    }
+
+    public void deleteGame(int gameID) {
+        games.remove(gameID);
+        moves.remove(gameID);
+    }
+
     public void deleteAllGames() {
         games.clear();
+        moves.clear();
     }
 
     public Collection<GameData> listAllGames() {
@@ -34,29 +49,124 @@ public class MemoryGameDataAccess implements GameDataAccess {
     }
 
     public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
-        // retrieve game if it exists
+        // retry until our copy is still current when we swap in the update
+        while (true) {
+            // retrieve game if it exists
+            GameData game = games.get(gameID);
+            if (game == null) {
+                throw new DataAccessException("bad request");
+            }
+
+            // check if place already taken
+            String userToReplace = color == ChessGame.TeamColor.WHITE ? game.whiteUsername() : game.blackUsername();
+            if (userToReplace != null && !userToReplace.isEmpty()) {
+                throw new DataAccessException("already taken");
+            }
+
+            // update game with username joined
+            GameData updatedGame;
+            if (color == ChessGame.TeamColor.WHITE) {
+                updatedGame = new GameData(gameID, username, game.blackUsername(), game.gameName(), game.game(),
+                        game.version() + 1);
+            } else {
+                updatedGame = new GameData(gameID, game.whiteUsername(), username, game.gameName(), game.game(),
+                        game.version() + 1);
+            }
+            if (games.replace(gameID, game, updatedGame)) {
+                return;
+            }
+        }
+    }
+
+    public void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+        while (true) {
+            GameData game = games.get(gameID);
+            if (game == null) {
+                throw new DataAccessException("bad request");
+            }
+
+            GameData updatedGame;
+            if (color == ChessGame.TeamColor.WHITE) {
+                updatedGame = new GameData(gameID, null, game.blackUsername(), game.gameName(), game.game(),
+                        game.version() + 1);
+            } else {
+                updatedGame = new GameData(gameID, game.whiteUsername(), null, game.gameName(), game.game(),
+                        game.version() + 1);
+            }
+            if (games.replace(gameID, game, updatedGame)) {
+                return;
+            }
+        }
+    }
+
+    public void updateGame(GameData gameData) throws DataAccessException {
+        int gameID = gameData.gameID();
         GameData game = games.get(gameID);
         if (game == null) {
             throw new DataAccessException("bad request");
         }
+        GameData updatedGame = new GameData(gameID, gameData.whiteUsername(), gameData.blackUsername(),
+                gameData.gameName(), gameData.game(), gameData.version() + 1);
+        if (game.version() != gameData.version() || !games.replace(gameID, game, updatedGame)) {
+            throw new DataAccessException("conflict");
+        }
+    }
 
-        // check if place already taken
-        String userToReplace = color == ChessGame.TeamColor.WHITE ? game.whiteUsername() : game.blackUsername();
-        if (userToReplace != null && !userToReplace.isEmpty()) {
-            throw new DataAccessException("already taken");
+    public void recordMove(GameData gameData, ChessMove move) {
+        // keep the stored players; only the board may have been swapped for another copy
+        games.computeIfPresent(gameData.gameID(), (gameID, game) -> game.game() == gameData.game() ? game
+                : new GameData(gameID, game.whiteUsername(), game.blackUsername(), game.gameName(), gameData.game(),
+                        game.version()));
+        movesOf(gameData.gameID()).add(move);
+    }
+
+    public void recordMoves(Collection<MoveBatch> batches) {
+        for (MoveBatch batch : batches) {
+            movesOf(batch.gameID()).addAll(batch.moves());
         }
+    }
 
-        // update game with username joined
-        GameData updatedGame;
-        if (color == ChessGame.TeamColor.WHITE) {
-            updatedGame = new GameData(gameID, username, game.blackUsername(), game.gameName(), game.game());
-        } else {
-            updatedGame = new GameData(gameID, game.whiteUsername(), username, game.gameName(), game.game());
+    public void endGame(int gameID) throws DataAccessException {
+        GameData game = games.get(gameID);
+        if (game == null) {
+            throw new DataAccessException("bad request");
         }
-        games.put(gameID, updatedGame);
+        game.game().endGame();
+    }
+
+    public List<ChessMove> listMoves(int gameID) {
+        return new ArrayList<>(moves.getOrDefault(gameID, List.of()));
     }
 
-    public void updateGame(GameData gameData) {
+    /**
+     * Stores a game under its existing ID, such as one being recovered from disk
+     */
+    void restoreGame(GameData gameData, List<ChessMove> gameMoves) {
         games.put(gameData.gameID(), gameData);
+        List<ChessMove> restoredMoves = Collections.synchronizedList(new ArrayList<>(gameMoves));
+        moves.put(gameData.gameID(), restoredMoves);
+        advanceNextGameID(gameData.gameID() + 1);
+    }
+
+    /**
+     * Takes the next game ID for a game that will be stored through restoreGame
+     */
+    int reserveGameID() {
+        return nextId.getAndIncrement();
+    }
+
+    int nextGameID() {
+        return nextId.get();
+    }
+
+    /**
+     * Makes sure no future game is given an ID below nextGameID
+     */
+    void advanceNextGameID(int nextGameID) {
+        nextId.accumulateAndGet(nextGameID, Math::max);
+    }
+
+    private List<ChessMove> movesOf(int gameID) {
+        return moves.computeIfAbsent(gameID, id -> Collections.synchronizedList(new ArrayList<>()));
     }
 }
@@ -2,28 +2,34 @@ package dataaccess;
 
 import model.UserData;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MemoryUserDataAccess implements UserDataAccess {
-    private int nextId = 1;
-    final private HashMap<Integer, UserData> users = new HashMap<>();
+    final private ConcurrentHashMap<String, UserData> users = new ConcurrentHashMap<>();
 
     public void addUser(UserData user) throws DataAccessException {
-        for (UserData currUser : users.values()) {
-            if (currUser.username().equals(user.username())) {
-                throw new DataAccessException("already taken");
-            }
+        if (user.username() == null) {
+            throw new DataAccessException("bad request");
+        }
+        if (users.putIfAbsent(user.username(), user) != null) {
+            throw new DataAccessException("already taken");
+        }
+    }
+
+    public void updatePassword(String username, String hashedPassword) throws DataAccessException {
+        if (username == null || users.computeIfPresent(username,
+                (name, user) -> new UserData(name, hashedPassword, user.email())) == null) {
+            throw new DataAccessException("bad request");
         }
-        users.put(nextId++, user);
     }
 
     public UserData getUser(String username) {
-        for (UserData user : users.values()) {
-            if (user.username().equals(username)) {
-                return user;
-            }
+        if (username == null) {
+            return null;
         }
-        return null;
+        return users.get(username);
     }
 
     public void deleteAllUsers() {
@@ -33,4 +39,8 @@ public class MemoryUserDataAccess implements UserDataAccess {
     public int getNumUsers() {
         return users.size();
     }
+
+    Collection<UserData> listAllUsers() {
+        return new ArrayList<>(users.values());
+    }
 }
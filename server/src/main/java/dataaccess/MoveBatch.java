@@ -0,0 +1,21 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.util.List;
+
+/**
+ * A run of consecutive moves for one game, the first of which was move number firstSeq. The
+ * game is read without locking it, so it must be a copy or only be changed by the caller.
+ */
+public record MoveBatch(
+        int gameID,
+        int firstSeq,
+        List<ChessMove> moves,
+        ChessGame game
+) {
+    public int lastSeq() {
+        return firstSeq + moves.size() - 1;
+    }
+}
@@ -3,9 +3,12 @@ package dataaccess;
 import model.AuthData;
 
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.UUID;
 
 public class MySQLAuthDataAccess implements AuthDataAccess {
+    // last-used times are only rewritten once they are this stale, so lookups rarely write
+    private static final long TOUCH_INTERVAL_MILLIS = 60 * 1000;
 
     public MySQLAuthDataAccess() throws DataAccessException {
         DatabaseManager.configureDatabase();
@@ -15,30 +18,50 @@ public class MySQLAuthDataAccess implements AuthDataAccess {
         if (username == null) {
             throw new DataAccessException("bad request");
         }
-        // generate AuthData with unique new authToken
-        AuthData proposedAuth;
-        do {
-            proposedAuth = new AuthData(UUID.randomUUID().toString(), username);
-        } while (retrieveAuthByAuthToken(proposedAuth.authToken()) != null);
-
-        int userID = getUserIDFromUsername(username);
-
-        // store and return result
-        String statement = "INSERT INTO auths (userid, authtoken) VALUES (?, ?)";
-        DatabaseManager.executeUpdate(statement, userID, proposedAuth.authToken());
-        return proposedAuth;
+        // resolve the userid and insert in one statement; the unique key on authtoken rejects collisions
+        String statement = """
+                INSERT INTO auths (userid, authtoken, issuedat, lastused)
+                SELECT COALESCE((SELECT userid FROM users WHERE username=?), -1), ?, ?, ?
+                """;
+        try (var conn = DatabaseManager.getConnection()) {
+            try (var ps = conn.prepareStatement(statement)) {
+                while (true) {
+                    AuthData proposedAuth = new AuthData(UUID.randomUUID().toString(), username);
+                    ps.setString(1, username);
+                    ps.setString(2, proposedAuth.authToken());
+                    long now = System.currentTimeMillis();
+                    ps.setLong(3, now);
+                    ps.setLong(4, now);
+                    try {
+                        ps.executeUpdate();
+                        return proposedAuth;
+                    } catch (SQLIntegrityConstraintViolationException ex) {
+                        // authToken already in use, draw another
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(String.format("unable to update database: %s, %s", statement, e.getMessage()));
+        }
     }
 
     public AuthData retrieveAuthByAuthToken(String authToken) throws DataAccessException {
         try (var conn = DatabaseManager.getConnection()) {
-            var statement = "SELECT userid, authtoken FROM auths WHERE authtoken=?";
+            var statement = "SELECT u.username, a.lastused FROM auths a LEFT JOIN users u ON a.userid = u.userid WHERE a.authtoken=?";
             try (var ps = conn.prepareStatement(statement)) {
                 ps.setString(1, authToken);
                 try (var rs = ps.executeQuery()) {
                     if (rs.next()) {
-                        int userID = rs.getInt("userid");
-                        String username = getUsernameFromUserID(userID);
-                        return new AuthData(authToken, username);
+                        AuthData auth = new AuthData(authToken, rs.getString("username"));
+                        long now = System.currentTimeMillis();
+                        if (now - rs.getLong("lastused") >= TOUCH_INTERVAL_MILLIS) {
+                            try (var touch = conn.prepareStatement("UPDATE auths SET lastused=? WHERE authtoken=?")) {
+                                touch.setLong(1, now);
+                                touch.setString(2, authToken);
+                                touch.executeUpdate();
+                            }
+                        }
+                        return auth;
                     }
                 }
             }
@@ -49,16 +72,13 @@ public class MySQLAuthDataAccess implements AuthDataAccess {
     }
 
     public AuthData retrieveAuthByUsername(String username) throws DataAccessException {
-        int userID = getUserIDFromUsername(username);
-
         try (var conn = DatabaseManager.getConnection()) {
-            var statement = "SELECT userid, authtoken FROM auths WHERE userid=?";
+            var statement = "SELECT a.authtoken FROM auths a JOIN users u ON a.userid = u.userid WHERE u.username=? LIMIT 1";
             try (var ps = conn.prepareStatement(statement)) {
-                ps.setInt(1, userID);
+                ps.setString(1, username);
                 try (var rs = ps.executeQuery()) {
                     if (rs.next()) {
-                        String authToken = rs.getString("authtoken");
-                        return new AuthData(authToken, username);
+                        return new AuthData(rs.getString("authtoken"), username);
                     }
                 }
             }
@@ -78,6 +98,11 @@ public class MySQLAuthDataAccess implements AuthDataAccess {
         DatabaseManager.executeUpdate(statement);
     }
 
+    public int deleteExpiredAuths(long idleCutoff, long absoluteCutoff, int limit) throws DataAccessException {
+        String statement = "DELETE FROM auths WHERE lastused < ? OR issuedat < ? LIMIT ?";
+        return DatabaseManager.executeUpdate(statement, idleCutoff, absoluteCutoff, limit);
+    }
+
     public int retrieveNumAuths() throws DataAccessException {
         String statement = "SELECT COUNT(userid) AS NUM_AUTHS FROM auths";
 
@@ -95,38 +120,4 @@ public class MySQLAuthDataAccess implements AuthDataAccess {
             throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
         }
     }
-
-    private int getUserIDFromUsername(String username) throws DataAccessException {
-        try (var conn = DatabaseManager.getConnection()) {
-            var statement = "SELECT userid FROM users WHERE username=?";
-            try (var ps = conn.prepareStatement(statement)) {
-                ps.setString(1, username);
-                try (var rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt("userid");
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
-        }
-        return -1;
-    }
-
-    private String getUsernameFromUserID(int userID) throws DataAccessException {
-        try (var conn = DatabaseManager.getConnection()) {
-            var statement = "SELECT username FROM users WHERE userid=?";
-            try (var ps = conn.prepareStatement(statement)) {
-                ps.setInt(1, userID);
-                try (var rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getString("username");
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
-        }
-        return null;
-    }
 }
@@ -1,14 +1,33 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
+import chess.InvalidMoveException;
 import com.google.gson.Gson;
 import model.GameData;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Stores each game as a JSON snapshot in the games table plus an append-only tail of
+ * packed moves in game_moves. A move costs one small insert; the snapshot is only
+ * rewritten every SNAPSHOT_INTERVAL moves, and games are rebuilt by replaying the tail.
+ */
 public class MySQLGameDataAccess implements GameDataAccess {
+    private static final int SNAPSHOT_INTERVAL = 20;
+
+    /**
+     * A game as read from its row, before the move tail after snapshotSeq has been replayed onto it
+     */
+    private record StoredGame(GameData gameData, int snapshotSeq, boolean gameOver) {
+    }
 
     public MySQLGameDataAccess() throws DataAccessException {
         DatabaseManager.configureDatabase();
@@ -19,80 +38,173 @@ public class MySQLGameDataAccess implements GameDataAccess {
         ChessGame game = new ChessGame();
         String gameJSON = new Gson().toJson(game, ChessGame.class);
         String statement = "INSERT INTO games (gamename, gamejson) VALUES (?, ?)";
-        int gameID = DatabaseManager.executeUpdate(statement, gameName, gameJSON);
+        int gameID = DatabaseManager.executeInsert(statement, gameName, gameJSON);
 
         // return results
         return new GameData(gameID, null, null, gameName, game);
     }
 
-    public void deleteAllGames() throws DataAccessException {
-        String statement = "DELETE FROM games";
-        DatabaseManager.executeUpdate(statement);
-    }
-
-    public Collection<GameData> listAllGames() throws DataAccessException {
-        Collection<GameData> allGames = new ArrayList<>();
+    public GameData getGame(int gameID) throws DataAccessException {
         try (var conn = DatabaseManager.getConnection()) {
-            String query = "SELECT * FROM games";
+            StoredGame storedGame = null;
+            String query = "SELECT * FROM games WHERE gameid=?";
             try (var ps = conn.prepareStatement(query)) {
+                ps.setInt(1, gameID);
+                try (var rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        storedGame = readGame(rs);
+                    }
+                }
+            }
+            if (storedGame == null) {
+                return null;
+            }
+
+            // bound to the snapshot just read, since a flush may have moved the row's snapshot on since
+            String tailQuery = "SELECT move FROM game_moves WHERE gameid=? AND seq > ? ORDER BY seq";
+            try (var ps = conn.prepareStatement(tailQuery)) {
+                ps.setInt(1, gameID);
+                ps.setInt(2, storedGame.snapshotSeq());
                 try (var rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        int gameID = rs.getInt("gameid");
-                        String whiteUsername = rs.getString("whiteusername");
-                        String blackUsername = rs.getString("blackusername");
-                        String gameName = rs.getString("gamename");
-                        String gameJSON = rs.getString("gamejson");
-                        ChessGame game = new Gson().fromJson(gameJSON, ChessGame.class);
-                        allGames.add(new GameData(gameID, whiteUsername, blackUsername, gameName, game));
+                        replayMove(storedGame.gameData(), rs.getInt("move"));
                     }
                 }
             }
+            return finishReplay(storedGame);
         } catch (SQLException e) {
             throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
         }
+    }
 
-        return allGames;
+    /**
+     * Inserts a game under its existing ID, along with its move history, such as one being
+     * imported from an archive. The stored snapshot already holds every move, so nothing
+     * is replayed when it is read.
+     */
+    public void restoreGame(GameData gameData, List<ChessMove> moves) throws DataAccessException {
+        String gameStatement = """
+                INSERT INTO games (gameid, whiteusername, blackusername, gamename, gamejson, snapshotseq, gameover, version)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+        String moveStatement = "INSERT INTO game_moves (gameid, seq, move) VALUES (?, ?, ?)";
+        ChessGame game = gameData.game();
+        DatabaseManager.inTransaction(() -> {
+            try (var conn = DatabaseManager.getConnection()) {
+                try (var ps = conn.prepareStatement(gameStatement)) {
+                    ps.setInt(1, gameData.gameID());
+                    ps.setString(2, gameData.whiteUsername());
+                    ps.setString(3, gameData.blackUsername());
+                    ps.setString(4, gameData.gameName());
+                    ps.setString(5, new Gson().toJson(game));
+                    ps.setInt(6, game.getMoveCount());
+                    ps.setBoolean(7, game.isGameOver());
+                    ps.setInt(8, gameData.version());
+                    ps.executeUpdate();
+                }
+                try (var ps = conn.prepareStatement(moveStatement)) {
+                    int seq = 1;
+                    for (ChessMove move : moves) {
+                        ps.setInt(1, gameData.gameID());
+                        ps.setInt(2, seq++);
+                        ps.setInt(3, move.pack());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return null;
+            } catch (SQLIntegrityConstraintViolationException e) {
+                throw new DataAccessException("already taken");
+            } catch (SQLException e) {
+                throw new DataAccessException(String.format("unable to update database: %s, %s", gameStatement, e.getMessage()));
+            }
+        });
     }
 
-    public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
-        // retrieve game if it exists
-        GameData gameData;
-        try (var conn = DatabaseManager.getConnection()) {
-            String query = "SELECT * FROM games WHERE gameID=?";
-            try (var ps = conn.prepareStatement(query)) {
-                ps.setInt(1, gameID);
-                try (var rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        String whiteUsername = rs.getString("whiteusername");
-                        String blackUsername = rs.getString("blackusername");
-                        String gameName = rs.getString("gamename");
-                        String gameJSON = rs.getString("gamejson");
-                        ChessGame game = new Gson().fromJson(gameJSON, ChessGame.class);
-                        gameData = new GameData(gameID, whiteUsername, blackUsername, gameName, game);
-                    } else {
-                        throw new DataAccessException("bad request");
+    public void deleteGame(int gameID) throws DataAccessException {
+        DatabaseManager.inTransaction(() -> {
+            DatabaseManager.executeUpdate("DELETE FROM game_moves WHERE gameid=?", gameID);
+            return DatabaseManager.executeUpdate("DELETE FROM games WHERE gameid=?", gameID);
+        });
+    }
+
+    public void deleteAllGames() throws DataAccessException {
+        DatabaseManager.inTransaction(() -> {
+            DatabaseManager.executeUpdate("DELETE FROM game_moves");
+            return DatabaseManager.executeUpdate("DELETE FROM games");
+        });
+    }
+
+    public Collection<GameData> listAllGames() throws DataAccessException {
+        // one transaction, so both reads see the same snapshots even if a flush commits in between
+        Map<Integer, StoredGame> allGames = DatabaseManager.inTransaction(() -> {
+            Map<Integer, StoredGame> storedGames = new LinkedHashMap<>();
+            try (var conn = DatabaseManager.getConnection()) {
+                String query = "SELECT * FROM games";
+                try (var ps = conn.prepareStatement(query)) {
+                    try (var rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            StoredGame storedGame = readGame(rs);
+                            storedGames.put(storedGame.gameData().gameID(), storedGame);
+                        }
+                    }
+                }
+
+                // replay every game's tail in a single pass
+                String tailQuery = """
+                        SELECT m.gameid, m.move FROM game_moves m JOIN games g ON m.gameid = g.gameid
+                        WHERE m.seq > g.snapshotseq ORDER BY m.gameid, m.seq
+                        """;
+                try (var ps = conn.prepareStatement(tailQuery)) {
+                    try (var rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            StoredGame storedGame = storedGames.get(rs.getInt("gameid"));
+                            if (storedGame != null) {
+                                replayMove(storedGame.gameData(), rs.getInt("move"));
+                            }
+                        }
                     }
                 }
+            } catch (SQLException e) {
+                throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
             }
-        } catch (SQLException e) {
-            throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
-        }
+            return storedGames;
+        });
 
-        // check if place already taken
-        String userToReplace = color == ChessGame.TeamColor.WHITE ? gameData.whiteUsername() : gameData.blackUsername();
-        if (userToReplace != null && !userToReplace.isEmpty()) {
-            throw new DataAccessException("already taken");
+        Collection<GameData> finishedGames = new ArrayList<>();
+        for (StoredGame storedGame : allGames.values()) {
+            finishedGames.add(finishReplay(storedGame));
         }
+        return finishedGames;
+    }
 
-        // update game with username joined
+    public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
+        // claim the seat in one statement so concurrent joins cannot both succeed
         String updateStatement;
         if (color == ChessGame.TeamColor.WHITE) {
-            updateStatement = "UPDATE games SET whiteusername=? WHERE gameid=?";
+            updateStatement = """
+                    UPDATE games SET whiteusername=?, version=version+1
+                    WHERE gameid=? AND (whiteusername IS NULL OR whiteusername='')
+                    """;
+        } else {
+            updateStatement = """
+                    UPDATE games SET blackusername=?, version=version+1
+                    WHERE gameid=? AND (blackusername IS NULL OR blackusername='')
+                    """;
+        }
+        if (DatabaseManager.executeUpdate(updateStatement, username, gameID) == 0) {
+            throw new DataAccessException(gameExists(gameID) ? "already taken" : "bad request");
+        }
+    }
 
+    public void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+        String updateStatement;
+        if (color == ChessGame.TeamColor.WHITE) {
+            updateStatement = "UPDATE games SET whiteusername=NULL, version=version+1 WHERE gameid=?";
         } else {
-            updateStatement = "UPDATE games SET blackusername=? WHERE gameid=?";
+            updateStatement = "UPDATE games SET blackusername=NULL, version=version+1 WHERE gameid=?";
         }
-        DatabaseManager.executeUpdate(updateStatement, username, gameID);
+        DatabaseManager.executeUpdate(updateStatement, gameID);
     }
 
     public void updateGame(GameData upToDateGame) throws DataAccessException {
@@ -102,9 +214,115 @@ public class MySQLGameDataAccess implements GameDataAccess {
         String updatedBlackUsername = upToDateGame.blackUsername();
         String updatedGameName = upToDateGame.gameName();
         String updatedGameJson = new Gson().toJson(upToDateGame.game());
+        int snapshotSeq = upToDateGame.game().getMoveCount();
+        int gameOver = upToDateGame.game().isGameOver() ? 1 : 0;
+
+        // overwrite the whole row, but only if nobody else has replaced it since this copy was read
+        String updateStatement = """
+                UPDATE games SET whiteusername=?, blackusername=?, gamename=?, gamejson=?, snapshotseq=?, gameover=?,
+                version=version+1
+                WHERE gameid=? AND version=?
+                """;
+        int updatedRows = DatabaseManager.executeUpdate(updateStatement, updatedWhiteUsername, updatedBlackUsername,
+                updatedGameName, updatedGameJson, snapshotSeq, gameOver, gameID, upToDateGame.version());
+        if (updatedRows == 0) {
+            throw new DataAccessException(gameExists(gameID) ? "conflict" : "bad request");
+        }
+    }
+
+    public void recordMove(GameData gameData, ChessMove move) throws DataAccessException {
+        int seq = gameData.game().getMoveCount();
+        recordMoves(List.of(new MoveBatch(gameData.gameID(), seq, List.of(move), gameData.game())));
+    }
+
+    public void recordMoves(Collection<MoveBatch> batches) throws DataAccessException {
+        List<Object[]> moveRows = new ArrayList<>();
+        List<Object[]> snapshotRows = new ArrayList<>();
+        for (MoveBatch batch : batches) {
+            int seq = batch.firstSeq();
+            for (ChessMove move : batch.moves()) {
+                moveRows.add(new Object[] {batch.gameID(), seq++, move.pack()});
+            }
+
+            // periodically fold the tail into a fresh snapshot so rebuilds stay short
+            if (batch.lastSeq() / SNAPSHOT_INTERVAL == (batch.firstSeq() - 1) / SNAPSHOT_INTERVAL) {
+                continue;
+            }
+            // the game may have moved on since the batch was taken; skip to the next interval if so
+            if (batch.game().getMoveCount() == batch.lastSeq()) {
+                snapshotRows.add(new Object[] {new Gson().toJson(batch.game()), batch.lastSeq(), batch.gameID()});
+            }
+        }
 
-        // update game with username joined
-        String updateStatement = "UPDATE games SET whiteusername=?, blackusername=?, gamename=?, gamejson=? WHERE gameid=?";
-        DatabaseManager.executeUpdate(updateStatement, updatedWhiteUsername, updatedBlackUsername, updatedGameName, updatedGameJson, gameID);
+        DatabaseManager.inTransaction(() -> {
+            DatabaseManager.executeBatch("INSERT INTO game_moves (gameid, seq, move) VALUES (?, ?, ?)", moveRows);
+            return DatabaseManager.executeBatch("UPDATE games SET gamejson=?, snapshotseq=? WHERE gameid=?", snapshotRows);
+        });
+    }
+
+    public void endGame(int gameID) throws DataAccessException {
+        String statement = "UPDATE games SET gameover=1 WHERE gameid=?";
+        DatabaseManager.executeUpdate(statement, gameID);
+    }
+
+    public List<ChessMove> listMoves(int gameID) throws DataAccessException {
+        List<ChessMove> moves = new ArrayList<>();
+        try (var conn = DatabaseManager.getConnection()) {
+            String query = "SELECT move FROM game_moves WHERE gameid=? ORDER BY seq";
+            try (var ps = conn.prepareStatement(query)) {
+                ps.setInt(1, gameID);
+                try (var rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        moves.add(ChessMove.unpack(rs.getInt("move")));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
+        }
+        return moves;
+    }
+
+    private StoredGame readGame(ResultSet rs) throws SQLException {
+        int gameID = rs.getInt("gameid");
+        String whiteUsername = rs.getString("whiteusername");
+        String blackUsername = rs.getString("blackusername");
+        String gameName = rs.getString("gamename");
+        ChessGame game = new Gson().fromJson(rs.getString("gamejson"), ChessGame.class);
+        int snapshotSeq = rs.getInt("snapshotseq");
+        boolean gameOver = rs.getBoolean("gameover");
+        int version = rs.getInt("version");
+        return new StoredGame(new GameData(gameID, whiteUsername, blackUsername, gameName, game, version),
+                snapshotSeq, gameOver);
+    }
+
+    private boolean gameExists(int gameID) throws DataAccessException {
+        try (var conn = DatabaseManager.getConnection()) {
+            try (var ps = conn.prepareStatement("SELECT 1 FROM games WHERE gameid=?")) {
+                ps.setInt(1, gameID);
+                try (var rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(String.format("Unable to read data: %s", e.getMessage()));
+        }
+    }
+
+    private void replayMove(GameData gameData, int packedMove) throws DataAccessException {
+        try {
+            gameData.game().makeMove(ChessMove.unpack(packedMove));
+        } catch (InvalidMoveException ex) {
+            throw new DataAccessException(String.format("Unable to replay move history of game %d: %s",
+                    gameData.gameID(), ex.getMessage()));
+        }
+    }
+
+    private GameData finishReplay(StoredGame storedGame) {
+        // an ended game rejects moves, so the flag is only applied once the tail is replayed
+        if (storedGame.gameOver()) {
+            storedGame.gameData().game().endGame();
+        }
+        return storedGame.gameData();
     }
 }
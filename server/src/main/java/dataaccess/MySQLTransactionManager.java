@@ -0,0 +1,7 @@
+package dataaccess;
+
+public class MySQLTransactionManager implements TransactionManager {
+    public <T> T inTransaction(Work<T> work) throws DataAccessException {
+        return DatabaseManager.inTransaction(work);
+    }
+}
@@ -40,6 +40,13 @@ public class MySQLUserDataAccess implements UserDataAccess {
         DatabaseManager.executeUpdate(statement, user.username(), user.password(), user.email());
     }
 
+    public void updatePassword(String username, String hashedPassword) throws DataAccessException {
+        String statement = "UPDATE users SET hashedpassword=? WHERE username=?";
+        if (DatabaseManager.executeUpdate(statement, hashedPassword, username) == 0) {
+            throw new DataAccessException("bad request");
+        }
+    }
+
     public void deleteAllUsers() throws DataAccessException {
         String statement = "DELETE FROM users";
         DatabaseManager.executeUpdate(statement);
@@ -0,0 +1,91 @@
+package dataaccess;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically deletes sessions that have sat idle past the idle TTL or were issued longer ago
+ * than the absolute TTL.
+ * <p>
+ * Each sweep deletes in batches of at most batchSize and stops after maxBatchesPerSweep, so a
+ * large backlog of expired sessions is worked off over several sweeps instead of in one long
+ * delete that holds locks on the auths table.
+ */
+public class SessionSweeper implements AutoCloseable {
+    public static final long DEFAULT_IDLE_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_ABSOLUTE_TTL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+    private static final long DEFAULT_SWEEP_INTERVAL_MILLIS = 60 * 1000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_MAX_BATCHES_PER_SWEEP = 20;
+
+    private final AuthDataAccess authDataAccess;
+    private final long idleTtlMillis;
+    private final long absoluteTtlMillis;
+    private final int batchSize;
+    private final int maxBatchesPerSweep;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong purgedCount = new AtomicLong();
+
+    public SessionSweeper(AuthDataAccess authDataAccess, long idleTtlMillis, long absoluteTtlMillis) {
+        this(authDataAccess, idleTtlMillis, absoluteTtlMillis, DEFAULT_SWEEP_INTERVAL_MILLIS,
+                DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCHES_PER_SWEEP);
+    }
+
+    public SessionSweeper(AuthDataAccess authDataAccess, long idleTtlMillis, long absoluteTtlMillis,
+                          long sweepIntervalMillis, int batchSize, int maxBatchesPerSweep) {
+        this.authDataAccess = authDataAccess;
+        this.idleTtlMillis = idleTtlMillis;
+        this.absoluteTtlMillis = absoluteTtlMillis;
+        this.batchSize = batchSize;
+        this.maxBatchesPerSweep = maxBatchesPerSweep;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs one sweep now and returns how many sessions it purged
+     */
+    public int sweep() throws DataAccessException {
+        long now = System.currentTimeMillis();
+        int purged = 0;
+        for (int batch = 0; batch < maxBatchesPerSweep; batch++) {
+            int deleted = authDataAccess.deleteExpiredAuths(now - idleTtlMillis, now - absoluteTtlMillis, batchSize);
+            purged += deleted;
+            purgedCount.addAndGet(deleted);
+            if (deleted < batchSize) {
+                break;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Total sessions purged since this sweeper started
+     */
+    public long getPurgedCount() {
+        return purgedCount.get();
+    }
+
+    public void close() {
+        sweeper.shutdown();
+        try {
+            sweeper.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (DataAccessException | RuntimeException ex) {
+            System.err.printf("Unable to purge expired sessions, will retry: %s%n", ex.getMessage());
+        }
+    }
+}
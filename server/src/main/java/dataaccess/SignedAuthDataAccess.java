@@ -0,0 +1,161 @@
+package dataaccess;
+
+import model.AuthData;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues self-contained auth tokens signed with HMAC-SHA256 in front of another AuthDataAccess.
+ * <p>
+ * A token carries its username, expiry and the revocation epoch it was issued under, so checking
+ * one needs only the key: nothing is stored, and any server configured with the same key and
+ * epoch accepts it. Logging out records the token in a small in-memory revocation set until it
+ * would have expired anyway. Clearing all auths bumps the epoch, which invalidates every token
+ * issued before it.
+ * <p>
+ * Tokens that are not in the signed format are passed to the delegate, so sessions created
+ * before switching over keep working. Signed tokens are never stored there, which means
+ * retrieveAuthByUsername and retrieveNumAuths only see the delegate's tokens.
+ */
+public class SignedAuthDataAccess implements AuthDataAccess {
+    public static final long DEFAULT_TTL_MILLIS = 12 * 60 * 60 * 1000;
+    private static final int MIN_PRUNE_SIZE = 1024;
+    private static final String PREFIX = "v1";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final AuthDataAccess delegate;
+    private final Mac prototypeMac;
+    private final long ttlMillis;
+    private final AtomicLong revocationEpoch;
+    // revoked token to the time it expires, after which it can be forgotten
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private final AtomicLong nextPruneSize = new AtomicLong(MIN_PRUNE_SIZE);
+
+    private record Claims(String username, long expiresAt, long epoch) {
+    }
+
+    public SignedAuthDataAccess(AuthDataAccess delegate, byte[] key) {
+        this(delegate, key, DEFAULT_TTL_MILLIS, 0);
+    }
+
+    public SignedAuthDataAccess(AuthDataAccess delegate, byte[] key, long ttlMillis, long revocationEpoch) {
+        if (key == null || key.length < 32) {
+            throw new IllegalArgumentException("signing key must be at least 32 bytes");
+        }
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.revocationEpoch = new AtomicLong(revocationEpoch);
+        try {
+            prototypeMac = Mac.getInstance("HmacSHA256");
+            prototypeMac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public AuthData createAuth(String username) throws DataAccessException {
+        if (username == null) {
+            throw new DataAccessException("bad request");
+        }
+        String body = String.join(".", PREFIX, ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8)),
+                Long.toString(System.currentTimeMillis() + ttlMillis), Long.toString(revocationEpoch.get()));
+        return new AuthData(body + "." + ENCODER.encodeToString(sign(body)), username);
+    }
+
+    public AuthData retrieveAuthByAuthToken(String authToken) throws DataAccessException {
+        if (authToken == null || !authToken.startsWith(PREFIX + ".")) {
+            return delegate.retrieveAuthByAuthToken(authToken);
+        }
+        Claims claims = verify(authToken);
+        if (claims == null || claims.expiresAt() < System.currentTimeMillis()
+                || claims.epoch() != revocationEpoch.get() || revoked.containsKey(authToken)) {
+            return null;
+        }
+        return new AuthData(authToken, claims.username());
+    }
+
+    public AuthData retrieveAuthByUsername(String username) throws DataAccessException {
+        return delegate.retrieveAuthByUsername(username);
+    }
+
+    public void deleteAuth(String authToken) throws DataAccessException {
+        if (authToken == null || !authToken.startsWith(PREFIX + ".")) {
+            delegate.deleteAuth(authToken);
+            return;
+        }
+        Claims claims = verify(authToken);
+        long now = System.currentTimeMillis();
+        if (claims != null && claims.expiresAt() >= now) {
+            revoked.put(authToken, claims.expiresAt());
+            long pruneSize = nextPruneSize.get();
+            if (revoked.size() >= pruneSize && nextPruneSize.compareAndSet(pruneSize, Long.MAX_VALUE)) {
+                revoked.values().removeIf(expiresAt -> expiresAt < now);
+                nextPruneSize.set(Math.max(MIN_PRUNE_SIZE, 2L * revoked.size()));
+            }
+        }
+    }
+
+    public void deleteAllAuths() throws DataAccessException {
+        revocationEpoch.incrementAndGet();
+        revoked.clear();
+        delegate.deleteAllAuths();
+    }
+
+    public int deleteExpiredAuths(long idleCutoff, long absoluteCutoff, int limit) throws DataAccessException {
+        // signed tokens expire on their own; only revocations of expired tokens need forgetting
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt < now);
+        return delegate.deleteExpiredAuths(idleCutoff, absoluteCutoff, limit);
+    }
+
+    public int retrieveNumAuths() throws DataAccessException {
+        return delegate.retrieveNumAuths();
+    }
+
+    public long getRevocationEpoch() {
+        return revocationEpoch.get();
+    }
+
+    public int getRevokedCount() {
+        return revoked.size();
+    }
+
+    /**
+     * Returns the claims of a token whose signature checks out, or null for anything else
+     */
+    private Claims verify(String authToken) {
+        int signatureStart = authToken.lastIndexOf('.');
+        String[] fields = authToken.substring(0, Math.max(signatureStart, 0)).split("\\.");
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            byte[] signature = DECODER.decode(authToken.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(signature, sign(authToken.substring(0, signatureStart)))) {
+                return null;
+            }
+            return new Claims(new String(DECODER.decode(fields[1]), StandardCharsets.UTF_8),
+                    Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String body) {
+        try {
+            // Mac instances are not thread-safe; cloning the initialized one skips the key setup
+            Mac mac = (Mac) prototypeMac.clone();
+            return mac.doFinal(body.getBytes(StandardCharsets.UTF_8));
+        } catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
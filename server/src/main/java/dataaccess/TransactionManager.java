@@ -0,0 +1,14 @@
+package dataaccess;
+
+/**
+ * Runs several data access calls as one unit: either all of their changes are kept or none are.
+ * Calls made through any data access object of the same store join the running transaction.
+ */
+public interface TransactionManager {
+    @FunctionalInterface
+    interface Work<T> {
+        T run() throws DataAccessException;
+    }
+
+    <T> T inTransaction(Work<T> work) throws DataAccessException;
+}
@@ -5,6 +5,7 @@ import model.UserData;
 public interface UserDataAccess {
     UserData getUser(String username) throws DataAccessException;
     void addUser(UserData user) throws DataAccessException;
+    void updatePassword(String username, String hashedPassword) throws DataAccessException;
     void deleteAllUsers() throws DataAccessException;
     int getNumUsers() throws DataAccessException;
 }
\ No newline at end of file
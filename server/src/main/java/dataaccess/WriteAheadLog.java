@@ -0,0 +1,288 @@
+package dataaccess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of checksummed records, split into numbered segment files.
+ * <p>
+ * Each record is framed as its length, a CRC32C of its payload, then the payload, so a
+ * write torn by a crash is detected on replay and cut off. Appends are group committed:
+ * records queue up in memory while one thread writes and forces the previous group, and
+ * the next thread to wait writes everything queued so far with a single force.
+ */
+class WriteAheadLog implements AutoCloseable {
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    // a Lock rather than a monitor, since appenders wait on it while another thread forces the
+    // log, and must not pin a virtual thread's carrier while they do
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition groupWritten = lock.newCondition();
+    // everything below is guarded by lock
+    private FileChannel channel;
+    private int segment;
+    private List<ByteBuffer> queued = new ArrayList<>();
+    private long queuedSeq;
+    private long durableSeq;
+    private long failedSeq;
+    private boolean writing;
+
+    /**
+     * Opens the given segment for appending, creating it if needed
+     */
+    WriteAheadLog(Path directory, int segment) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+    }
+
+    /**
+     * Queues a record and returns the sequence number to pass to awaitDurable
+     */
+    long enqueue(byte[] payload) {
+        ByteBuffer frame = frame(payload);
+        lock.lock();
+        try {
+            queued.add(frame);
+            return ++queuedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number has been forced to disk
+     */
+    void awaitDurable(long seq) throws IOException {
+        while (true) {
+            List<ByteBuffer> group;
+            long groupSeq;
+            FileChannel groupChannel;
+            lock.lock();
+            try {
+                while (writing && durableSeq < seq && failedSeq < seq) {
+                    try {
+                        groupWritten.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted while waiting for the log");
+                    }
+                }
+                if (durableSeq >= seq) {
+                    return;
+                }
+                if (failedSeq >= seq) {
+                    throw new IOException("log write failed");
+                }
+
+                // nobody is writing, so this thread writes the whole queued group
+                writing = true;
+                group = queued;
+                queued = new ArrayList<>();
+                groupSeq = queuedSeq;
+                groupChannel = channel;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException failure = null;
+            long start = -1;
+            try {
+                start = groupChannel.position();
+                ByteBuffer[] buffers = group.toArray(new ByteBuffer[0]);
+                while (hasRemaining(buffers)) {
+                    groupChannel.write(buffers);
+                }
+                groupChannel.force(false);
+            } catch (IOException ex) {
+                failure = ex;
+                truncateQuietly(groupChannel, start);
+            }
+
+            lock.lock();
+            try {
+                writing = false;
+                if (failure == null) {
+                    durableSeq = groupSeq;
+                } else {
+                    failedSeq = groupSeq;
+                }
+                groupWritten.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Forces everything queued so far, then starts a new segment and returns its number.
+     * Callers must stop enqueueing while this runs.
+     */
+    int roll() throws IOException {
+        long lastSeq;
+        lock.lock();
+        try {
+            lastSeq = queuedSeq;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lastSeq);
+        lock.lock();
+        try {
+            FileChannel newChannel = openSegment(segment + 1);
+            channel.close();
+            channel = newChannel;
+            segment++;
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        long lastSeq;
+        lock.lock();
+        try {
+            lastSeq = queuedSeq;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            awaitDurable(lastSeq);
+        } finally {
+            lock.lock();
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static Path segmentPath(Path directory, int segment) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Lists the numbers of the segments in the directory, in order
+     */
+    static List<Integer> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Hands every intact record in a segment to the consumer, in order, and cuts the file
+     * off after the last intact record
+     */
+    static void replay(Path file, Consumer<byte[]> consumer) throws IOException {
+        try (FileChannel replayChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long validEnd = 0;
+            byte[] payload;
+            while ((payload = readFrame(replayChannel)) != null) {
+                consumer.accept(payload);
+                validEnd = replayChannel.position();
+            }
+            if (validEnd < replayChannel.size()) {
+                replayChannel.truncate(validEnd);
+                replayChannel.force(false);
+            }
+        }
+    }
+
+    static ByteBuffer frame(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return frame;
+    }
+
+    /**
+     * Reads the next framed record, or returns null at the end of the channel or at the
+     * first record that is incomplete or fails its checksum
+     */
+    static byte[] readFrame(FileChannel source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (!readFully(source, header)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || length > source.size() - source.position()) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(source, payload)) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return payload.array();
+    }
+
+    private FileChannel openSegment(int segmentNumber) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentPath(directory, segmentNumber),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segmentChannel.position(segmentChannel.size());
+        return segmentChannel;
+    }
+
+    private static boolean readFully(FileChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void truncateQuietly(FileChannel target, long position) {
+        // drop a partly written group so later records are not stranded behind it
+        if (position < 0) {
+            return;
+        }
+        try {
+            target.truncate(position);
+            target.position(position);
+        } catch (IOException ex) {
+            System.err.printf("Unable to trim failed log write: %s%n", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import model.GameData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Wraps another GameDataAccess so that moves and game endings are applied to an in-memory
+ * copy of the game right away and written to the wrapped store later, in batches.
+ * <p>
+ * Successive writes to the same game are coalesced until the next flush. Each flush first
+ * appends every pending move in a single batch, then marks ended games, so a crash part way
+ * through never leaves a game ended ahead of its recorded moves. Anything that fails to flush
+ * is retried ahead of newer writes. Seat changes and full updates are versioned by the
+ * wrapped store, so they flush pending writes and then go straight through.
+ * <p>
+ * Each pending game keeps its own copy of the board as of its last recorded move, so a flush
+ * never has to lock a live game that a caller may be holding while it waits for room.
+ */
+public class WriteBehindGameDataAccess implements GameDataAccess, AutoCloseable {
+    private static final int DEFAULT_MAX_PENDING_GAMES = 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    private final GameDataAccess delegate;
+    private final int maxPendingGames;
+    private final ConcurrentHashMap<Integer, GameData> hotGames = new ConcurrentHashMap<>();
+    // guarded by pendingLock; insertion order is the order games first became dirty
+    private final LinkedHashMap<Integer, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    // Locks rather than monitors, since both are held or waited on while blocked, which would pin a virtual thread's carrier
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Condition drained = pendingLock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Everything written to one game since it was last flushed
+     */
+    private static class PendingWrite {
+        // the board as of the last move in moves, copied when it was recorded
+        ChessGame board;
+        int firstSeq;
+        final List<ChessMove> moves = new ArrayList<>();
+        boolean ended;
+
+        boolean isEmpty() {
+            return moves.isEmpty() && !ended;
+        }
+
+        /**
+         * Appends newer writes to this one, keeping this one's moves first
+         */
+        void absorb(PendingWrite newer) {
+            if (newer.board != null) {
+                board = newer.board;
+            }
+            if (moves.isEmpty()) {
+                firstSeq = newer.firstSeq;
+            }
+            moves.addAll(newer.moves);
+            ended |= newer.ended;
+        }
+    }
+
+    public WriteBehindGameDataAccess(GameDataAccess delegate) {
+        this(delegate, DEFAULT_MAX_PENDING_GAMES, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public WriteBehindGameDataAccess(GameDataAccess delegate, int maxPendingGames, long flushIntervalMillis) {
+        this.delegate = delegate;
+        this.maxPendingGames = maxPendingGames;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public GameData createGame(String gameName) throws DataAccessException {
+        return delegate.createGame(gameName);
+    }
+
+    public GameData getGame(int gameID) throws DataAccessException {
+        GameData hotGame = hotGames.get(gameID);
+        if (hotGame != null) {
+            return copyOf(hotGame);
+        }
+        return delegate.getGame(gameID);
+    }
+
+    public void deleteGame(int gameID) throws DataAccessException {
+        // anything still pending for the game has to land first, or a later flush would recreate it
+        flush();
+        delegate.deleteGame(gameID);
+        pendingLock.lock();
+        try {
+            if (!pendingWrites.containsKey(gameID)) {
+                hotGames.remove(gameID);
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    public void deleteAllGames() throws DataAccessException {
+        flushLock.lock();
+        try {
+            pendingLock.lock();
+            try {
+                pendingWrites.clear();
+                drained.signalAll();
+            } finally {
+                pendingLock.unlock();
+            }
+            hotGames.clear();
+            delegate.deleteAllGames();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Collection<GameData> listAllGames() throws DataAccessException {
+        Collection<GameData> allGames = new ArrayList<>();
+        for (GameData storedGame : delegate.listAllGames()) {
+            GameData hotGame = hotGames.get(storedGame.gameID());
+            allGames.add(hotGame == null ? storedGame : copyOf(hotGame));
+        }
+        return allGames;
+    }
+
+    public void joinGame(ChessGame.TeamColor color, int gameID, String username) throws DataAccessException {
+        // the seat check happens in the wrapped store, so it must see every earlier write
+        flush();
+        delegate.joinGame(color, gameID, username);
+        refreshHotGame(gameID, game -> withSeat(game, color, username, game.version() + 1));
+    }
+
+    public void leaveGame(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+        flush();
+        delegate.leaveGame(color, gameID);
+        refreshHotGame(gameID, game -> withSeat(game, color, null, game.version() + 1));
+    }
+
+    public void updateGame(GameData gameData) throws DataAccessException {
+        flush();
+        delegate.updateGame(gameData);
+        refreshHotGame(gameData.gameID(), game -> new GameData(gameData.gameID(), gameData.whiteUsername(),
+                gameData.blackUsername(), gameData.gameName(), gameData.game(), gameData.version() + 1));
+    }
+
+    /**
+     * Called by the thread making moves in the game, after it has made this one, so the board
+     * can be copied without locking it
+     */
+    public void recordMove(GameData gameData, ChessMove move) throws DataAccessException {
+        int seq = gameData.game().getMoveCount();
+        ChessGame board = new ChessGame(gameData.game());
+        enqueue(gameData, pending -> {
+            pending.board = board;
+            if (pending.moves.isEmpty()) {
+                pending.firstSeq = seq;
+            }
+            pending.moves.add(move);
+        });
+    }
+
+    public void recordMoves(Collection<MoveBatch> batches) throws DataAccessException {
+        flush();
+        delegate.recordMoves(batches);
+    }
+
+    public void endGame(int gameID) throws DataAccessException {
+        GameData game = getGame(gameID);
+        if (game == null) {
+            throw new DataAccessException("bad request");
+        }
+        game.game().endGame();
+        enqueue(game, pending -> pending.ended = true);
+    }
+
+    public List<ChessMove> listMoves(int gameID) throws DataAccessException {
+        flush();
+        return delegate.listMoves(gameID);
+    }
+
+    /**
+     * Writes every pending change to the wrapped store
+     */
+    public void flush() throws DataAccessException {
+        flushLock.lock();
+        try {
+            Map<Integer, PendingWrite> batch;
+            pendingLock.lock();
+            try {
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(pendingWrites);
+                pendingWrites.clear();
+                drained.signalAll();
+            } finally {
+                pendingLock.unlock();
+            }
+
+            try {
+                // moves for every game go out together and before any state that depends on them
+                List<MoveBatch> moveBatches = new ArrayList<>();
+                for (var entry : batch.entrySet()) {
+                    PendingWrite pending = entry.getValue();
+                    if (!pending.moves.isEmpty()) {
+                        moveBatches.add(new MoveBatch(entry.getKey(), pending.firstSeq,
+                                List.copyOf(pending.moves), pending.board));
+                    }
+                }
+                if (!moveBatches.isEmpty()) {
+                    delegate.recordMoves(moveBatches);
+                    for (PendingWrite pending : batch.values()) {
+                        pending.moves.clear();
+                    }
+                }
+
+                for (var entry : batch.entrySet()) {
+                    flushGameState(entry.getKey(), entry.getValue());
+                }
+            } catch (DataAccessException | RuntimeException ex) {
+                requeue(batch);
+                throw ex;
+            }
+
+            // games with nothing left to write are served by the wrapped store again
+            pendingLock.lock();
+            try {
+                for (Integer gameID : batch.keySet()) {
+                    if (!pendingWrites.containsKey(gameID)) {
+                        hotGames.remove(gameID);
+                    }
+                }
+            } finally {
+                pendingLock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background flusher and writes whatever is still pending
+     */
+    public void close() throws DataAccessException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flushGameState(int gameID, PendingWrite pending) throws DataAccessException {
+        if (pending.ended) {
+            delegate.endGame(gameID);
+            pending.ended = false;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (DataAccessException | RuntimeException ex) {
+            System.err.printf("Unable to flush game writes, will retry: %s%n", ex.getMessage());
+        }
+    }
+
+    private void requeue(Map<Integer, PendingWrite> failedBatch) {
+        pendingLock.lock();
+        try {
+            LinkedHashMap<Integer, PendingWrite> merged = new LinkedHashMap<>();
+            for (var entry : failedBatch.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    merged.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (var entry : pendingWrites.entrySet()) {
+                PendingWrite older = merged.get(entry.getKey());
+                if (older == null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else {
+                    older.absorb(entry.getValue());
+                }
+            }
+            pendingWrites.clear();
+            pendingWrites.putAll(merged);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Applies a change the wrapped store has already made to the in-memory copy, if that copy
+     * is still needed for writes that have not been flushed yet
+     */
+    private void refreshHotGame(int gameID, UnaryOperator<GameData> change) {
+        pendingLock.lock();
+        try {
+            if (pendingWrites.containsKey(gameID)) {
+                hotGames.computeIfPresent(gameID, (id, game) -> change.apply(game));
+            } else {
+                hotGames.remove(gameID);
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * The in-memory copy is the caller's own game, which it may still change, so readers get
+     * a board of their own
+     */
+    private static GameData copyOf(GameData game) {
+        return new GameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName(),
+                new ChessGame(game.game()), game.version());
+    }
+
+    private static GameData withSeat(GameData game, ChessGame.TeamColor color, String username, int version) {
+        if (color == ChessGame.TeamColor.WHITE) {
+            return new GameData(game.gameID(), username, game.blackUsername(), game.gameName(), game.game(), version);
+        }
+        return new GameData(game.gameID(), game.whiteUsername(), username, game.gameName(), game.game(), version);
+    }
+
+    private void enqueue(GameData gameData, Consumer<PendingWrite> change) throws DataAccessException {
+        int gameID = gameData.gameID();
+        pendingLock.lock();
+        try {
+            // apply backpressure once too many games are waiting on the database
+            while (!pendingWrites.containsKey(gameID) && pendingWrites.size() >= maxPendingGames) {
+                if (flusher.isShutdown()) {
+                    throw new DataAccessException("game writes have been shut down");
+                }
+                flusher.execute(this::flushQuietly);
+                try {
+                    drained.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new DataAccessException("interrupted while waiting to write game");
+                }
+            }
+            change.accept(pendingWrites.computeIfAbsent(gameID, id -> new PendingWrite()));
+            hotGames.put(gameID, gameData);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+}
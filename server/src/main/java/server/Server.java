@@ -2,13 +2,22 @@ package server;
 
 import com.google.gson.Gson;
 import dataaccess.*;
+import model.WireFormat;
 import requestresult.*;
 import service.ClearService;
 import service.GameService;
+import service.PasswordHasher;
 import service.UserService;
 import spark.*;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import websocketserver.ConnectionManager;
+import websocketserver.ObserverFanout;
 import websocketserver.WSServer;
 
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Map;
 
 public class Server {
@@ -16,18 +25,36 @@ public class Server {
     private final GameService gameService;
     private final ClearService clearService;
     private final WSServer wsServer;
+    private WriteBehindGameDataAccess writeBehindGames;
+    private DurableMemoryStore durableStore;
+    private ArchivingGameDataAccess archivingGames;
+    private SessionSweeper sessionSweeper;
     private final int successStatus = 200;
     DatabaseType currDatabaseType = DatabaseType.SQL;
+    ThreadMode currThreadMode = ThreadMode.VIRTUAL;
+    AuthMode currAuthMode = AuthMode.STORED;
 
     public enum DatabaseType {
         MEMORY,
+        DURABLE_MEMORY,
         SQL
     }
 
+    public enum ThreadMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    public enum AuthMode {
+        STORED,
+        SIGNED
+    }
+
     public Server() {
         UserDataAccess userDataAccess;
         AuthDataAccess authDataAccess;
         GameDataAccess gameDataAccess;
+        TransactionManager transactionManager = new MemoryTransactionManager();
 
         switch (currDatabaseType) {
             case MEMORY:
@@ -35,11 +62,24 @@ public class Server {
                 authDataAccess = new MemoryAuthDataAccess();
                 gameDataAccess = new MemoryGameDataAccess();
                 break;
+            case DURABLE_MEMORY:
+                try {
+                    durableStore = new DurableMemoryStore(dataDirectory());
+                } catch (DataAccessException ex) {
+                    throw new RuntimeException(ex.getMessage());
+                }
+                userDataAccess = durableStore.userDataAccess();
+                authDataAccess = durableStore.authDataAccess();
+                gameDataAccess = durableStore.gameDataAccess();
+                break;
             case SQL:
                 try {
                     userDataAccess = new MySQLUserDataAccess();
-                    authDataAccess = new MySQLAuthDataAccess();
-                    gameDataAccess = new MySQLGameDataAccess();
+                    authDataAccess = new CachingAuthDataAccess(new MySQLAuthDataAccess());
+                    writeBehindGames = new WriteBehindGameDataAccess(new MySQLGameDataAccess());
+                    archivingGames = new ArchivingGameDataAccess(writeBehindGames, dataDirectory().resolve("archive"));
+                    gameDataAccess = new CachingGameDataAccess(archivingGames);
+                    transactionManager = new MySQLTransactionManager();
                 } catch (DataAccessException ex) {
                     throw new RuntimeException(ex.getMessage());
                 }
@@ -47,21 +87,35 @@ public class Server {
             default:
                 throw new RuntimeException("Database type not supported.");
         }
+        if (currAuthMode == AuthMode.SIGNED) {
+            // tokens verify against the key alone; the stored auths only serve tokens issued earlier
+            authDataAccess = new SignedAuthDataAccess(authDataAccess, signingKey(),
+                    SignedAuthDataAccess.DEFAULT_TTL_MILLIS, Long.getLong("chess.tokenEpoch", 0));
+        }
+
+        sessionSweeper = new SessionSweeper(authDataAccess,
+                Long.getLong("chess.session.idleTtlMillis", SessionSweeper.DEFAULT_IDLE_TTL_MILLIS),
+                Long.getLong("chess.session.absoluteTtlMillis", SessionSweeper.DEFAULT_ABSOLUTE_TTL_MILLIS));
 
-        this.userService = new UserService(userDataAccess, authDataAccess);
+        this.userService = new UserService(userDataAccess, authDataAccess, PasswordHasher.defaultHasher(), transactionManager);
         this.gameService = new GameService(authDataAccess, gameDataAccess);
-        this.clearService = new ClearService(userDataAccess, authDataAccess, gameDataAccess);
-        this.wsServer = new WSServer(this.userService, this.gameService);
+        this.clearService = new ClearService(userDataAccess, authDataAccess, gameDataAccess, transactionManager);
+        this.wsServer = new WSServer(this.userService, this.gameService, connectionManager());
     }
 
     public Server(UserService userService, GameService gameService, ClearService clearService) {
         this.userService = userService;
         this.gameService = gameService;
         this.clearService = clearService;
-        this.wsServer = new WSServer(this.userService, this.gameService);
+        this.wsServer = new WSServer(this.userService, this.gameService, connectionManager());
     }
 
     public int run(int desiredPort) {
+        if (currThreadMode == ThreadMode.VIRTUAL) {
+            // requests and websocket messages each get a virtual thread instead of a pooled platform thread
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                    new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool()));
+        }
         Spark.port(desiredPort);
 
         Spark.staticFiles.location("web");
@@ -85,6 +139,55 @@ public class Server {
     public void stop() {
         Spark.stop();
         Spark.awaitStop();
+        wsServer.close();
+        if (sessionSweeper != null) {
+            sessionSweeper.close();
+        }
+        if (writeBehindGames != null) {
+            try {
+                writeBehindGames.close();
+            } catch (DataAccessException ex) {
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+        if (archivingGames != null) {
+            archivingGames.close();
+        }
+        if (durableStore != null) {
+            try {
+                durableStore.close();
+            } catch (DataAccessException ex) {
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    private static Path dataDirectory() {
+        return Path.of(System.getProperty("chess.dataDir", "chess-data"));
+    }
+
+    /**
+     * Observers of a game are sent at most chess.ws.observerSnapshotsPerSecond boards, fanned out
+     * over chess.ws.fanoutShards threads
+     */
+    private static ConnectionManager connectionManager() {
+        return new ConnectionManager(ConnectionManager.DEFAULT_MAX_QUEUED_MESSAGES,
+                Integer.getInteger("chess.ws.observerSnapshotsPerSecond", ObserverFanout.DEFAULT_SNAPSHOTS_PER_SECOND),
+                Integer.getInteger("chess.ws.fanoutShards", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Key from the base64 chess.tokenKey property, which every server sharing sessions must set
+     * alike; without it a random key is used and tokens die with this process
+     */
+    private static byte[] signingKey() {
+        String configuredKey = System.getProperty("chess.tokenKey");
+        if (configuredKey != null) {
+            return Base64.getDecoder().decode(configuredKey);
+        }
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
     }
 
     private void exceptionHandler(DataAccessException ex, Request req, Response res) {
@@ -92,6 +195,8 @@ public class Server {
             case "bad request" -> 400;
             case "unauthorized" -> 401;
             case "already taken" -> 403;
+            case "conflict" -> 409;
+            case "service unavailable" -> 503;
             default -> 500;
         };
         res.status(statusCode);
@@ -102,34 +207,34 @@ public class Server {
         RegisterRequest request = new Gson().fromJson(req.body(), RegisterRequest.class);
         RegisterResult result = userService.register(request);
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 
     private Object list(Request req, Response res) throws DataAccessException {
         ListRequest request = new ListRequest(req.headers("authorization"));
         ListResult result = gameService.list(request);
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 
     private Object clear(Request req, Response res) throws DataAccessException {
         ClearResult result = clearService.clear();
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 
     private Object login(Request req, Response res) throws DataAccessException {
         LoginRequest request = new Gson().fromJson(req.body(), LoginRequest.class);
         LoginResult result = userService.login(request);
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 
     private Object logout(Request req, Response res) throws DataAccessException {
         LogoutRequest request = new LogoutRequest(req.headers("authorization"));
         LogoutResult result = userService.logout(request);
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 
     private Object create(Request req, Response res) throws DataAccessException {
@@ -139,7 +244,7 @@ public class Server {
         request = new CreateRequest(authToken, request.gameName());
         CreateResult result = gameService.create(request);
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 
     private Object join(Request req, Response res) throws DataAccessException {
@@ -148,6 +253,6 @@ public class Server {
         request = new JoinRequest(authToken, request.playerColor(), request.gameID());
         JoinResult result = gameService.join(request);
         res.status(successStatus);
-        return new Gson().toJson(result);
+        return WireFormat.GSON.toJson(result);
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that runs every task, HTTP requests and WebSocket messages alike, on its
+ * own virtual thread. A task blocked on JDBC parks its virtual thread instead of holding a
+ * platform thread, so slow database calls cannot drain the pool; how many of them reach the
+ * database at once is limited by the connection permits in DatabaseManager instead.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private volatile ExecutorService executor = newExecutor();
+
+    @Override
+    protected void doStart() throws Exception {
+        if (executor.isShutdown()) {
+            executor = newExecutor();
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        super.doStop();
+    }
+
+    public void execute(Runnable task) {
+        runningTasks.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    runningTasks.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            runningTasks.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    public boolean tryExecute(Runnable task) {
+        // starting a virtual thread never has to wait for a free one
+        try {
+            execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    public void join() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    public int getThreads() {
+        return runningTasks.get();
+    }
+
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jetty-virtual-", 0).factory());
+    }
+}
@@ -3,23 +3,34 @@ package service;
 import dataaccess.AuthDataAccess;
 import dataaccess.DataAccessException;
 import dataaccess.GameDataAccess;
+import dataaccess.MemoryTransactionManager;
+import dataaccess.TransactionManager;
 import dataaccess.UserDataAccess;
 import requestresult.ClearResult;
 
 public class ClearService extends Service {
     private final UserDataAccess userDataAccess;
     private final GameDataAccess gameDataAccess;
+    private final TransactionManager transactionManager;
 
     public ClearService(UserDataAccess userDataAccess, AuthDataAccess authDataAccess, GameDataAccess gameDataAccess) {
+        this(userDataAccess, authDataAccess, gameDataAccess, new MemoryTransactionManager());
+    }
+
+    public ClearService(UserDataAccess userDataAccess, AuthDataAccess authDataAccess, GameDataAccess gameDataAccess,
+                        TransactionManager transactionManager) {
         super(authDataAccess);
         this.userDataAccess = userDataAccess;
         this.gameDataAccess = gameDataAccess;
+        this.transactionManager = transactionManager;
     }
 
     public ClearResult clear() throws DataAccessException {
-        userDataAccess.deleteAllUsers();
-        authDataAccess.deleteAllAuths();
-        gameDataAccess.deleteAllGames();
-        return new ClearResult();
+        return transactionManager.inTransaction(() -> {
+            userDataAccess.deleteAllUsers();
+            authDataAccess.deleteAllAuths();
+            gameDataAccess.deleteAllGames();
+            return new ClearResult();
+        });
     }
 }
@@ -1,5 +1,7 @@
 package service;
 
+import chess.ChessGame;
+import chess.ChessMove;
 import dataaccess.AuthDataAccess;
 import dataaccess.DataAccessException;
 import dataaccess.GameDataAccess;
@@ -8,9 +10,13 @@ import model.GameData;
 import requestresult.*;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 public class GameService extends Service {
     private final GameDataAccess gameDataAccess;
+    private final List<BiConsumer<Integer, String>> joinListeners = new CopyOnWriteArrayList<>();
 
     public GameService(AuthDataAccess authDataAccess, GameDataAccess gameDataAccess) {
         super(authDataAccess);
@@ -44,10 +50,41 @@ public class GameService extends Service {
         AuthData auth = authenticate(request.authToken());
 
         gameDataAccess.joinGame(request.playerColor(), request.gameID(), auth.username());
+        for (BiConsumer<Integer, String> listener : joinListeners) {
+            listener.accept(request.gameID(), auth.username());
+        }
         return new JoinResult();
     }
 
+    /**
+     * Tells the listener the game ID and username of every seat taken from now on
+     */
+    public void addJoinListener(BiConsumer<Integer, String> listener) {
+        joinListeners.add(listener);
+    }
+
+    public GameData getGame(int gameID) throws DataAccessException {
+        return gameDataAccess.getGame(gameID);
+    }
+
     public void update(GameData gameData) throws DataAccessException {
         gameDataAccess.updateGame(gameData);
     }
+
+    public void recordMove(GameData gameData, ChessMove move) throws DataAccessException {
+        gameDataAccess.recordMove(gameData, move);
+    }
+
+    public void endGame(GameData gameData) throws DataAccessException {
+        gameData.game().endGame();
+        gameDataAccess.endGame(gameData.gameID());
+    }
+
+    public void leave(ChessGame.TeamColor color, int gameID) throws DataAccessException {
+        gameDataAccess.leaveGame(color, gameID);
+    }
+
+    public List<ChessMove> listMoves(int gameID) throws DataAccessException {
+        return gameDataAccess.listMoves(gameID);
+    }
 }
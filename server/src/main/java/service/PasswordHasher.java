@@ -0,0 +1,123 @@
+package service;
+
+import dataaccess.DataAccessException;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt on its own small pool of platform threads so that a burst of logins can only
+ * occupy those threads, never the ones handling moves. The pool has a bounded queue; once it
+ * is full, new work is refused at once with "service unavailable" instead of piling up.
+ * <p>
+ * The work factor is configurable. Hashes made with a different cost still verify, and
+ * {@link #verify} hands back a replacement hash at the current cost when one is due.
+ */
+public class PasswordHasher implements AutoCloseable {
+    public static final int DEFAULT_COST = 10;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static PasswordHasher defaultHasher;
+
+    private final int cost;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Result of checking a password; rehashed is non-null when the stored hash should be replaced
+     */
+    public record Verification(boolean matches, String rehashed) {
+    }
+
+    public PasswordHasher(int cost, int threads, int queueCapacity) {
+        if (cost < 4 || cost > 31 || threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("bad hasher configuration");
+        }
+        this.cost = cost;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Shared hasher configured from the chess.bcrypt.cost, chess.bcrypt.threads and
+     * chess.bcrypt.queue system properties; by default it uses half the cores
+     */
+    public static synchronized PasswordHasher defaultHasher() {
+        if (defaultHasher == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            defaultHasher = new PasswordHasher(Integer.getInteger("chess.bcrypt.cost", DEFAULT_COST),
+                    Integer.getInteger("chess.bcrypt.threads", Math.max(1, cores / 2)),
+                    Integer.getInteger("chess.bcrypt.queue", 64));
+        }
+        return defaultHasher;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public String hash(String password) throws DataAccessException {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    public Verification verify(String password, String hashedPassword) throws DataAccessException {
+        return run(() -> {
+            if (!BCrypt.checkpw(password, hashedPassword)) {
+                return new Verification(false, null);
+            }
+            // the password is at hand only now, so this is the one chance to move it to the current cost
+            String rehashed = costOf(hashedPassword) != cost ? BCrypt.hashpw(password, BCrypt.gensalt(cost)) : null;
+            return new Verification(true, rehashed);
+        });
+    }
+
+    /**
+     * Reads the cost out of a hash of the form $2a$NN$...
+     */
+    static int costOf(String hashedPassword) {
+        try {
+            return Integer.parseInt(hashedPassword.substring(4, 6));
+        } catch (RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> task) throws DataAccessException {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException ex) {
+            throw new DataAccessException("service unavailable");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("service unavailable");
+        } catch (ExecutionException ex) {
+            // checkpw throws on a malformed stored hash, which can never match
+            if (ex.getCause() instanceof IllegalArgumentException) {
+                throw new DataAccessException("unauthorized");
+            }
+            throw new DataAccessException(String.format("Unable to hash password: %s", ex.getCause().getMessage()));
+        }
+    }
+}
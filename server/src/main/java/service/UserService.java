@@ -2,18 +2,37 @@ package service;
 
 import dataaccess.AuthDataAccess;
 import dataaccess.DataAccessException;
+import dataaccess.MemoryTransactionManager;
+import dataaccess.TransactionManager;
 import dataaccess.UserDataAccess;
 import model.AuthData;
 import model.UserData;
-import org.mindrot.jbcrypt.BCrypt;
 import requestresult.*;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
 public class UserService extends Service {
     private final UserDataAccess userDataAccess;
+    private final PasswordHasher passwordHasher;
+    private final TransactionManager transactionManager;
+    private final List<Consumer<String>> logoutListeners = new CopyOnWriteArrayList<>();
 
     public UserService(UserDataAccess userDataAccess, AuthDataAccess authDataAccess) {
+        this(userDataAccess, authDataAccess, PasswordHasher.defaultHasher());
+    }
+
+    public UserService(UserDataAccess userDataAccess, AuthDataAccess authDataAccess, PasswordHasher passwordHasher) {
+        this(userDataAccess, authDataAccess, passwordHasher, new MemoryTransactionManager());
+    }
+
+    public UserService(UserDataAccess userDataAccess, AuthDataAccess authDataAccess, PasswordHasher passwordHasher,
+                       TransactionManager transactionManager) {
         super(authDataAccess);
         this.userDataAccess = userDataAccess;
+        this.passwordHasher = passwordHasher;
+        this.transactionManager = transactionManager;
     }
 
     public RegisterResult register(RegisterRequest request) throws DataAccessException {
@@ -22,12 +41,14 @@ public class UserService extends Service {
         nullCheck(request.password());
         nullCheck(request.email());
 
-        String hashedPassword = BCrypt.hashpw(request.password(), BCrypt.gensalt());
+        String hashedPassword = passwordHasher.hash(request.password());
 
+        // hash before opening the transaction so the slow part holds no connection
         UserData newUser = new UserData(request.username(), hashedPassword, request.email());
-        userDataAccess.addUser(newUser);
-
-        AuthData newAuth = authDataAccess.createAuth(request.username());
+        AuthData newAuth = transactionManager.inTransaction(() -> {
+            userDataAccess.addUser(newUser);
+            return authDataAccess.createAuth(request.username());
+        });
 
         return new RegisterResult(request.username(), newAuth.authToken());
     }
@@ -46,9 +67,13 @@ public class UserService extends Service {
         if (user == null) {
             throw new DataAccessException("unauthorized");
         }
-        if (!BCrypt.checkpw(request.password(), user.password())) {
+        PasswordHasher.Verification verification = passwordHasher.verify(request.password(), user.password());
+        if (!verification.matches()) {
             throw new DataAccessException("unauthorized");
         }
+        if (verification.rehashed() != null) {
+            userDataAccess.updatePassword(user.username(), verification.rehashed());
+        }
 
 
         // perform log-in
@@ -62,6 +87,17 @@ public class UserService extends Service {
         // perform log-out
         authenticate(request.authToken());
         authDataAccess.deleteAuth(request.authToken());
+        for (Consumer<String> listener : logoutListeners) {
+            listener.accept(request.authToken());
+        }
         return new LogoutResult();
     }
+
+    /**
+     * Tells the listener about every token logged out from now on, for anything that holds on
+     * to identities it has already authenticated
+     */
+    public void addLogoutListener(Consumer<String> listener) {
+        logoutListeners.add(listener);
+    }
 }
@@ -2,20 +2,53 @@ package websocketserver;
 
 import org.eclipse.jetty.websocket.api.Session;
 
-import java.io.IOException;
-
+/**
+ * One user's WebSocket session, attached to a game. Messages go out through the session's
+ * {@link Outbox}, which outlives the connection if the user leaves and keeps the session open.
+ */
 public class Connection {
     public String username;
     public Session session;
     public int gameID;
+    // the token this session authenticated with at CONNECT, trusted for its later commands
+    public final String authToken;
+    private volatile boolean revoked;
+    // watching rather than playing, so served through the observer fan-out
+    public volatile boolean observer;
+    // the client keeps its own board and asked for MOVE messages instead of LOAD_GAME after each move
+    public final boolean wantsMoves;
+    private final Outbox outbox;
 
-    public Connection(String username, Session session, int gameID) {
+    Connection(String username, Session session, int gameID, String authToken, boolean observer,
+               boolean wantsMoves, Outbox outbox) {
         this.username = username;
         this.session = session;
         this.gameID = gameID;
+        this.authToken = authToken;
+        this.observer = observer;
+        this.wantsMoves = wantsMoves;
+        this.outbox = outbox;
+    }
+
+    public boolean isAuthenticatedAs(String token) {
+        return !revoked && authToken.equals(token);
+    }
+
+    /**
+     * The token has been logged out, so commands must authenticate in full again, and fail
+     */
+    public void revoke() {
+        revoked = true;
+    }
+
+    /**
+     * Queues a message on this session's outbox
+     */
+    void send(OutboundMessage message) {
+        outbox.send(message);
     }
 
-    public void send(String msg) throws IOException {
-        session.getRemote().sendString(msg);
+    public int getQueueDepth() {
+        return outbox.getQueueDepth();
     }
-}
\ No newline at end of file
+}
@@ -1,31 +1,158 @@
 package websocketserver;
 
-import com.google.gson.Gson;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import websocket.BinaryProtocol;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
 import websocket.messages.ServerMessage;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class ConnectionManager {
-    public final ConcurrentHashMap<String, Connection> connections = new ConcurrentHashMap<>();
+/**
+ * Tracks each user's open connection, indexed by the game it is attached to so that a
+ * broadcast only visits that game's players and observers. Players are sent to directly;
+ * observers are handed to the {@link ObserverFanout}.
+ */
+public class ConnectionManager implements AutoCloseable {
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 64;
+    private final ConcurrentHashMap<String, Connection> connectionsByUsername = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Session, Connection> connectionsBySession = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Set<Connection>> connectionsByGame = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Connection> connectionsByToken = new ConcurrentHashMap<>();
+    // one per open session, kept from its first message until it closes, whether or not it is in a game
+    private final ConcurrentHashMap<Session, Outbox> outboxesBySession = new ConcurrentHashMap<>();
+    private final int maxQueuedMessages;
+    private final OutboundStats stats = new OutboundStats();
+    private final ObserverFanout observers;
 
-    public void add(String userToAdd, Session session, int gameID) {
-        var connection = new Connection(userToAdd, session, gameID);
-        connections.put(userToAdd, connection);
+    public ConnectionManager() {
+        this(DEFAULT_MAX_QUEUED_MESSAGES, ObserverFanout.DEFAULT_SNAPSHOTS_PER_SECOND,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConnectionManager(int maxQueuedMessages, int observerSnapshotsPerSecond, int fanoutShards) {
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.observers = new ObserverFanout(observerSnapshotsPerSecond, fanoutShards, this::dropClosed);
+    }
+
+    /**
+     * Attaches a user's session to a game, as a player or an observer, bound to the token it
+     * authenticated with, and returns the connection it replaced, if any
+     */
+    public Connection add(String userToAdd, Session session, int gameID, String authToken, boolean observer) {
+        var connection = new Connection(userToAdd, session, gameID, authToken, observer,
+                requested(session, "updates", "moves"), outbox(session));
+        if (observer) {
+            observers.add(connection);
+        } else {
+            addPlayer(connection);
+        }
+
+        // a user has one connection at a time, so connecting again replaces the old one wherever it was
+        Connection replaced = connectionsByUsername.put(userToAdd, connection);
+        if (replaced != null) {
+            forget(replaced);
+        }
+        connectionsBySession.put(session, connection);
+        connectionsByToken.put(authToken, connection);
+        return replaced;
+    }
+
+    /**
+     * Moves a user watching a game into its player tier once they have taken a seat in it
+     */
+    public void seat(String username, int gameID) {
+        Connection connection = connectionsByUsername.get(username);
+        if (connection == null || !connection.observer || connection.gameID != gameID) {
+            return;
+        }
+        observers.remove(connection);
+        connection.observer = false;
+        addPlayer(connection);
     }
 
     public void remove(String userToRemove) {
-        connections.remove(userToRemove);
+        Connection removed = connectionsByUsername.remove(userToRemove);
+        if (removed != null) {
+            forget(removed);
+        }
+    }
+
+    /**
+     * Forgets whichever user's connection uses this session, returning it, or null if none does
+     */
+    public Connection removeSession(Session session) {
+        Connection removed = connectionsBySession.get(session);
+        if (removed != null && connectionsByUsername.remove(removed.username, removed)) {
+            forget(removed);
+            return removed;
+        }
+        return null;
+    }
+
+    /**
+     * Forgets a session that has closed, along with its outbox, returning the connection that
+     * used it, or null if none did
+     */
+    public Connection closeSession(Session session) {
+        outboxesBySession.remove(session);
+        return removeSession(session);
+    }
+
+    /**
+     * The user this session authenticated as at CONNECT, or null if it has not connected with
+     * this token or the token has since been logged out
+     */
+    public String authenticatedUsername(Session session, String authToken) {
+        Connection connection = connectionsBySession.get(session);
+        return connection != null && connection.isAuthenticatedAs(authToken) ? connection.username : null;
+    }
+
+    /**
+     * Stops trusting a logged out token on whichever session was bound to it
+     */
+    public void revoke(String authToken) {
+        Connection connection = connectionsByToken.remove(authToken);
+        if (connection != null) {
+            connection.revoke();
+        }
+    }
+
+    /**
+     * Sends a message to one session through its outbound queue, whether or not it has joined a
+     * game, so it never overlaps a write still pending from before the session left one
+     */
+    public void send(Session session, ServerMessage message) throws IOException {
+        if (!session.isOpen()) {
+            return;
+        }
+        outbox(session).send(new OutboundMessage(message));
+    }
+
+    public int getConnectionCount(int gameID) {
+        Set<Connection> gameConnections = connectionsByGame.get(gameID);
+        return (gameConnections == null ? 0 : gameConnections.size()) + observers.getObserverCount(gameID);
     }
 
     public void broadcast(String userToExclude, ServerMessage notification, int gameID) throws IOException {
+        observers.publish(gameID, notification, userToExclude);
+        Set<Connection> gameConnections = connectionsByGame.get(gameID);
+        if (gameConnections == null) {
+            return;
+        }
+        // every recipient gets the same bytes, so encode once per format rather than once per connection
+        var outbound = new OutboundMessage(notification);
         var removeList = new ArrayList<Connection>();
-        for (var c : connections.values()) {
+        for (var c : gameConnections) {
             if (c.session.isOpen()) {
-                if (!c.username.equals(userToExclude) && c.gameID == gameID) {
-                    c.send(new Gson().toJson(notification));
+                if (!c.username.equals(userToExclude)) {
+                    c.send(outbound);
                 }
             } else {
                 removeList.add(c);
@@ -33,8 +160,127 @@ public class ConnectionManager {
         }
 
         // Clean up any connections that were left open.
-        for (var c : removeList) {
-            connections.remove(c.username);
+        removeList.forEach(this::dropClosed);
+    }
+
+    /**
+     * Sends the game after a move: just the move to players that keep their own board, the
+     * full game to everyone else, each encoded at most once
+     */
+    public void broadcastGameUpdate(LoadGameMessage game, MoveMessage move, int gameID) throws IOException {
+        observers.publish(gameID, game, null);
+        Set<Connection> gameConnections = connectionsByGame.get(gameID);
+        if (gameConnections == null) {
+            return;
+        }
+        var gameOutbound = new OutboundMessage(game);
+        var moveOutbound = new OutboundMessage(move);
+        var removeList = new ArrayList<Connection>();
+        for (var c : gameConnections) {
+            if (!c.session.isOpen()) {
+                removeList.add(c);
+            } else {
+                c.send(c.wantsMoves ? moveOutbound : gameOutbound);
+            }
+        }
+
+        removeList.forEach(this::dropClosed);
+    }
+
+    public OutboundStats getOutboundStats() {
+        return stats;
+    }
+
+    public ObserverFanout getObserverFanout() {
+        return observers;
+    }
+
+    @Override
+    public void close() {
+        observers.close();
+    }
+
+    /**
+     * Messages waiting in all outbound queues combined
+     */
+    public int getQueuedMessageCount() {
+        int queued = 0;
+        for (Outbox outbox : outboxesBySession.values()) {
+            queued += outbox.getQueueDepth();
+        }
+        return queued;
+    }
+
+    public int getMaxQueueDepth() {
+        int deepest = 0;
+        for (Outbox outbox : outboxesBySession.values()) {
+            deepest = Math.max(deepest, outbox.getQueueDepth());
+        }
+        return deepest;
+    }
+
+    /**
+     * Whether the client connected with name=value in its WebSocket URI
+     */
+    static boolean requested(Session session, String name, String value) {
+        if (session.getUpgradeRequest() == null) {
+            return false;
+        }
+        Map<String, List<String>> params = session.getUpgradeRequest().getParameterMap();
+        List<String> values = params == null ? null : params.get(name);
+        return values != null && values.contains(value);
+    }
+
+    /**
+     * Whether the handshake agreed on this WebSocket extension
+     */
+    static boolean negotiated(Session session, String extension) {
+        if (session.getUpgradeResponse() == null || session.getUpgradeResponse().getExtensions() == null) {
+            return false;
+        }
+        for (ExtensionConfig config : session.getUpgradeResponse().getExtensions()) {
+            if (config.getName().equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Outbox outbox(Session session) {
+        Outbox outbox = outboxesBySession.computeIfAbsent(session, s -> new Outbox(s,
+                requested(s, BinaryProtocol.QUERY_PARAMETER, BinaryProtocol.QUERY_VALUE),
+                negotiated(s, "permessage-deflate"), maxQueuedMessages, stats));
+        if (!session.isOpen()) {
+            // closed while this was being created, so closeSession may already have run
+            outboxesBySession.remove(session, outbox);
+        }
+        return outbox;
+    }
+
+    private void addPlayer(Connection connection) {
+        connectionsByGame.compute(connection.gameID, (id, gameConnections) -> {
+            Set<Connection> updatedConnections = gameConnections == null ? ConcurrentHashMap.newKeySet() : gameConnections;
+            updatedConnections.add(connection);
+            return updatedConnections;
+        });
+    }
+
+    private void dropClosed(Connection connection) {
+        if (connectionsByUsername.remove(connection.username, connection)) {
+            forget(connection);
+        }
+    }
+
+    private void forget(Connection connection) {
+        connectionsBySession.remove(connection.session, connection);
+        connectionsByToken.remove(connection.authToken, connection);
+        if (connection.observer) {
+            observers.remove(connection);
+            return;
         }
+        connectionsByGame.computeIfPresent(connection.gameID, (id, gameConnections) -> {
+            gameConnections.remove(connection);
+            return gameConnections.isEmpty() ? null : gameConnections;
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package websocketserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the commands for each game one at a time in the order they arrive, while commands for
+ * different games run in parallel.
+ * <p>
+ * Each game with work outstanding has a chain of futures; a new command is appended to the
+ * end of its game's chain, and the chain is dropped once its last command finishes. Commands
+ * run on virtual threads, so a game waiting on the database costs no platform thread.
+ */
+public class GameMailboxes {
+    private final Executor executor;
+    private final ConcurrentHashMap<Integer, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public GameMailboxes() {
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("game-mailbox-", 0).factory()));
+    }
+
+    public GameMailboxes(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a command behind every command already submitted for the same game
+     */
+    public CompletableFuture<Void> submit(int gameID, Runnable command) {
+        CompletableFuture<Void> queued = tails.compute(gameID, (id, tail) -> {
+            if (tail == null) {
+                return CompletableFuture.runAsync(command, executor);
+            }
+            // run after the previous command whether or not it failed
+            return tail.handleAsync((result, ex) -> {
+                command.run();
+                return null;
+            }, executor);
+        });
+        queued.whenComplete((result, ex) -> tails.remove(gameID, queued));
+        return queued;
+    }
+
+    /**
+     * Games that currently have commands queued or running
+     */
+    public int getActiveGameCount() {
+        return tails.size();
+    }
+}
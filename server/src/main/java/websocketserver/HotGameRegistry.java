@@ -0,0 +1,95 @@
+package websocketserver;
+
+import chess.ChessGame;
+import dataaccess.DataAccessException;
+import model.GameData;
+import service.GameService;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the games that have WebSocket sessions attached resident in memory, so commands work
+ * on the loaded copy instead of reading the game back from storage each time.
+ * <p>
+ * Every change a command makes is still handed to GameService as it happens, so a resident
+ * game never holds anything storage lacks and evicting it only drops the copy. Callers run
+ * inside the game's mailbox, which keeps access to any one game single-threaded.
+ */
+public class HotGameRegistry {
+    private final GameService gameService;
+    private final ConcurrentHashMap<Integer, GameData> residentGames = new ConcurrentHashMap<>();
+
+    public HotGameRegistry(GameService gameService) {
+        this.gameService = gameService;
+    }
+
+    /**
+     * Returns the resident copy of a game, or reads it from storage if it has no sessions
+     * attached; null if the game does not exist
+     */
+    public GameData get(int gameID) throws DataAccessException {
+        GameData resident = residentGames.get(gameID);
+        if (resident != null) {
+            return resident;
+        }
+        return gameService.getGame(gameID);
+    }
+
+    /**
+     * Makes a game resident for a session attaching to it
+     */
+    public GameData attach(int gameID) throws DataAccessException {
+        return load(gameID, true);
+    }
+
+    /**
+     * Rereads a game's players and version from storage, which change through the HTTP API
+     * without passing through here, and keeps the resident board
+     */
+    public GameData reload(int gameID) throws DataAccessException {
+        return load(gameID, false);
+    }
+
+    /**
+     * Replaces the resident board with one a move has been made on and recorded, keeping the
+     * resident seats; a game that is not resident is left to storage
+     */
+    public void publish(GameData movedGame) {
+        residentGames.computeIfPresent(movedGame.gameID(), (id, game) -> new GameData(id, game.whiteUsername(),
+                game.blackUsername(), game.gameName(), movedGame.game(), game.version()));
+    }
+
+    /**
+     * Clears a seat in the resident copy after the player has left it in storage
+     */
+    public void vacateSeat(int gameID, ChessGame.TeamColor color) {
+        residentGames.computeIfPresent(gameID, (id, game) -> color == ChessGame.TeamColor.WHITE
+                ? new GameData(id, null, game.blackUsername(), game.gameName(), game.game(), game.version() + 1)
+                : new GameData(id, game.whiteUsername(), null, game.gameName(), game.game(), game.version() + 1));
+    }
+
+    public void evict(int gameID) {
+        residentGames.remove(gameID);
+    }
+
+    public int getResidentGameCount() {
+        return residentGames.size();
+    }
+
+    private GameData load(int gameID, boolean attaching) throws DataAccessException {
+        GameData stored = gameService.getGame(gameID);
+        if (stored == null) {
+            residentGames.remove(gameID);
+            return null;
+        }
+        GameData resident = residentGames.get(gameID);
+        if (resident == null && !attaching) {
+            return stored;
+        }
+        ChessGame game = resident == null ? stored.game() : resident.game();
+        GameData merged = new GameData(gameID, stored.whiteUsername(), stored.blackUsername(),
+                stored.gameName(), game, stored.version());
+        residentGames.put(gameID, merged);
+        return merged;
+    }
+}
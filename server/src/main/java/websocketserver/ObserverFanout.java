@@ -0,0 +1,232 @@
+package websocketserver;
+
+import chess.ChessGame;
+import model.GameData;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.ServerMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Serves a game's observers apart from its two players, so a game with a huge audience costs
+ * the players' command thread one hand-off per shard rather than a send per observer.
+ * <p>
+ * Observers are spread over shards, each with its own worker thread, and every shard fans a
+ * game's messages out to its share of that game's observers. A shard sends a game's observers
+ * at most snapshotsPerSecond boards: a LOAD_GAME arriving sooner after the last one waits, and
+ * is replaced if a newer one comes in meanwhile. Observers therefore always get full LOAD_GAME
+ * snapshots, never MOVE deltas, which would be lost in the coalescing. Notifications that
+ * arrive while a board is waiting are sent after it, in order; others go straight out.
+ */
+public class ObserverFanout implements AutoCloseable {
+    public static final int DEFAULT_SNAPSHOTS_PER_SECOND = 4;
+
+    private final Shard[] shards;
+    private final long snapshotIntervalNanos;
+    private final Consumer<Connection> onClosed;
+    private final AtomicLong coalescedSnapshots = new AtomicLong();
+
+    /**
+     * @param onClosed told about observers found closed while fanning out, to forget them
+     */
+    public ObserverFanout(int snapshotsPerSecond, int shardCount, Consumer<Connection> onClosed) {
+        this.snapshotIntervalNanos = TimeUnit.SECONDS.toNanos(1) / snapshotsPerSecond;
+        this.onClosed = onClosed;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    public void add(Connection observer) {
+        shardFor(observer).add(observer);
+    }
+
+    public void remove(Connection observer) {
+        shardFor(observer).remove(observer);
+    }
+
+    public int getObserverCount(int gameID) {
+        int count = 0;
+        for (Shard shard : shards) {
+            Set<Connection> observers = shard.observersByGame.get(gameID);
+            count += observers == null ? 0 : observers.size();
+        }
+        return count;
+    }
+
+    /**
+     * Sends a message to every observer of a game except userToExclude, from the shard threads.
+     * A board is copied here, on the caller's thread, since the shards may send it well after
+     * later moves have changed the live game.
+     */
+    public void publish(int gameID, ServerMessage message, String userToExclude) {
+        if (getObserverCount(gameID) == 0) {
+            return;
+        }
+        if (message instanceof LoadGameMessage load) {
+            message = new LoadGameMessage(load.getServerMessageType(), copyOf(load.getGame()));
+        }
+        ServerMessage published = message;
+        for (Shard shard : shards) {
+            if (shard.observersByGame.containsKey(gameID)) {
+                shard.worker.execute(() -> shard.accept(gameID, published, userToExclude));
+            }
+        }
+    }
+
+    /**
+     * Boards that were replaced by a newer one before being sent, counted once per shard
+     */
+    public long getCoalescedSnapshots() {
+        return coalescedSnapshots.get();
+    }
+
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.worker.shutdown();
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.worker.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static GameData copyOf(GameData gameData) {
+        // a move replaces the board rather than changing it, but ending a game marks the board
+        // itself, so observers queued behind it get their own copy
+        ChessGame game = new ChessGame(gameData.game());
+        return new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
+                gameData.gameName(), game, gameData.version());
+    }
+
+    private Shard shardFor(Connection observer) {
+        return shards[Math.floorMod(observer.username.hashCode(), shards.length)];
+    }
+
+    private record Addressed(ServerMessage message, String userToExclude) {
+    }
+
+    /**
+     * What a shard still owes one game's observers
+     */
+    private static class Pending {
+        Addressed snapshot;
+        final List<Addressed> notifications = new ArrayList<>();
+        boolean flushScheduled;
+        long lastSnapshotNanos;
+    }
+
+    private class Shard {
+        final ConcurrentHashMap<Integer, Set<Connection>> observersByGame = new ConcurrentHashMap<>();
+        final ScheduledExecutorService worker;
+        // only touched on the worker thread
+        final Map<Integer, Pending> pendingByGame = new HashMap<>();
+
+        Shard(int index) {
+            worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "observer-fanout-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void add(Connection observer) {
+            observersByGame.compute(observer.gameID, (id, observers) -> {
+                Set<Connection> updated = observers == null ? ConcurrentHashMap.newKeySet() : observers;
+                updated.add(observer);
+                return updated;
+            });
+        }
+
+        void remove(Connection observer) {
+            Set<Connection> remaining = observersByGame.computeIfPresent(observer.gameID, (id, observers) -> {
+                observers.remove(observer);
+                return observers.isEmpty() ? null : observers;
+            });
+            if (remaining == null && !worker.isShutdown()) {
+                worker.execute(() -> {
+                    if (!observersByGame.containsKey(observer.gameID)) {
+                        pendingByGame.remove(observer.gameID);
+                    }
+                });
+            }
+        }
+
+        void accept(int gameID, ServerMessage message, String userToExclude) {
+            Pending pending = pendingByGame.computeIfAbsent(gameID, id -> new Pending());
+            Addressed addressed = new Addressed(message, userToExclude);
+            if (message.getServerMessageType() != ServerMessage.ServerMessageType.LOAD_GAME) {
+                if (pending.snapshot != null) {
+                    pending.notifications.add(addressed);
+                } else {
+                    deliver(gameID, addressed);
+                }
+                return;
+            }
+
+            if (pending.snapshot != null) {
+                coalescedSnapshots.incrementAndGet();
+            }
+            pending.snapshot = addressed;
+            if (!pending.flushScheduled) {
+                pending.flushScheduled = true;
+                long wait = pending.lastSnapshotNanos + snapshotIntervalNanos - System.nanoTime();
+                if (pending.lastSnapshotNanos == 0 || wait <= 0) {
+                    flush(gameID);
+                } else {
+                    worker.schedule(() -> flush(gameID), wait, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        private void flush(int gameID) {
+            Pending pending = pendingByGame.get(gameID);
+            if (pending == null) {
+                return;
+            }
+            pending.flushScheduled = false;
+            pending.lastSnapshotNanos = System.nanoTime();
+            if (pending.snapshot != null) {
+                deliver(gameID, pending.snapshot);
+                pending.snapshot = null;
+            }
+            for (Addressed notification : pending.notifications) {
+                deliver(gameID, notification);
+            }
+            pending.notifications.clear();
+        }
+
+        private void deliver(int gameID, Addressed addressed) {
+            Set<Connection> observers = observersByGame.get(gameID);
+            if (observers == null) {
+                return;
+            }
+            // encoded once per format for this shard's share of the audience
+            var outbound = new OutboundMessage(addressed.message());
+            var closed = new ArrayList<Connection>();
+            for (Connection observer : observers) {
+                if (!observer.session.isOpen()) {
+                    closed.add(observer);
+                } else if (!observer.username.equals(addressed.userToExclude())) {
+                    observer.send(outbound);
+                }
+            }
+            closed.forEach(onClosed);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package websocketserver;
+
+import com.google.gson.Gson;
+import model.WireFormat;
+import websocket.BinaryProtocol;
+import websocket.messages.ServerMessage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A server message on its way out, encoded the first time each wire format is asked for, so a
+ * broadcast encodes it at most once per format however many connections receive it
+ */
+class OutboundMessage {
+    private static final Gson GSON = WireFormat.GSON;
+    private final ServerMessage message;
+    private String text;
+    private int textLength = -1;
+    private byte[] binary;
+
+    OutboundMessage(ServerMessage message) {
+        this.message = message;
+    }
+
+    /**
+     * A LOAD_GAME holds the whole game, which makes any earlier one still queued stale
+     */
+    boolean isSnapshot() {
+        return message.getServerMessageType() == ServerMessage.ServerMessageType.LOAD_GAME;
+    }
+
+    String text() {
+        if (text == null) {
+            text = GSON.toJson(message);
+        }
+        return text;
+    }
+
+    /**
+     * The size of the JSON text on the wire, which is UTF-8 and so not its length in chars
+     */
+    int textLength() {
+        if (textLength < 0) {
+            textLength = text().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return textLength;
+    }
+
+    byte[] binary() {
+        if (binary == null) {
+            binary = BinaryProtocol.encodeMessage(message);
+        }
+        return binary;
+    }
+}
@@ -0,0 +1,41 @@
+package websocketserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters shared by every connection's outbound queue
+ */
+public class OutboundStats {
+    final AtomicLong droppedSnapshots = new AtomicLong();
+    final AtomicLong slowConsumerDisconnects = new AtomicLong();
+    final AtomicLong failedSends = new AtomicLong();
+    final AtomicLong payloadBytes = new AtomicLong();
+    final AtomicLong deflatePayloadBytes = new AtomicLong();
+
+    public long getDroppedSnapshots() {
+        return droppedSnapshots.get();
+    }
+
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.get();
+    }
+
+    public long getFailedSends() {
+        return failedSends.get();
+    }
+
+    /**
+     * Bytes of messages handed to Jetty, before any compression
+     */
+    public long getPayloadBytes() {
+        return payloadBytes.get();
+    }
+
+    /**
+     * The part of {@link #getPayloadBytes()} sent to clients that negotiated permessage-deflate,
+     * which Jetty compresses on the way out
+     */
+    public long getDeflatePayloadBytes() {
+        return deflatePayloadBytes.get();
+    }
+}
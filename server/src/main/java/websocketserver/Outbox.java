@@ -0,0 +1,120 @@
+package websocketserver;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * The outbound queue of one WebSocket session. Every message to the session goes through it,
+ * whichever game the session is attached to, or none, so writes never overlap.
+ * <p>
+ * Messages are written with Jetty's async send, one at a time and in order, so a caller never
+ * waits on the network. A LOAD_GAME snapshot replaces any older snapshot still waiting in the
+ * queue. If the queue still fills up, the client is not keeping up and is disconnected rather
+ * than buffered for without bound.
+ */
+class Outbox {
+    final Session session;
+    // the client asked for binary frames instead of JSON text
+    final boolean binary;
+    // Jetty compresses this session's frames with permessage-deflate
+    final boolean deflate;
+    private final int maxQueuedMessages;
+    private final OutboundStats stats;
+    // guarded by this
+    private final ArrayDeque<Outbound> queue = new ArrayDeque<>();
+    private boolean sending;
+    private boolean abandoned;
+
+    private record Outbound(String text, byte[] bytes, int length, boolean snapshot) {
+    }
+
+    Outbox(Session session, boolean binary, boolean deflate, int maxQueuedMessages, OutboundStats stats) {
+        this.session = session;
+        this.binary = binary;
+        this.deflate = deflate;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.stats = stats;
+    }
+
+    /**
+     * Queues a message in whichever format this client asked for
+     */
+    void send(OutboundMessage message) {
+        if (binary) {
+            enqueue(new Outbound(null, message.binary(), message.binary().length, message.isSnapshot()));
+        } else {
+            enqueue(new Outbound(message.text(), null, message.textLength(), message.isSnapshot()));
+        }
+    }
+
+    synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void enqueue(Outbound outbound) {
+        Outbound next;
+        synchronized (this) {
+            if (abandoned) {
+                return;
+            }
+            if (outbound.snapshot() && queue.removeIf(Outbound::snapshot)) {
+                stats.droppedSnapshots.incrementAndGet();
+            }
+            if (queue.size() >= maxQueuedMessages) {
+                abandoned = true;
+                queue.clear();
+                next = null;
+            } else {
+                queue.add(outbound);
+                if (sending) {
+                    return;
+                }
+                sending = true;
+                next = queue.poll();
+            }
+        }
+        if (next == null) {
+            stats.slowConsumerDisconnects.incrementAndGet();
+            session.close(StatusCode.POLICY_VIOLATION, "Client is not keeping up with game updates");
+            return;
+        }
+        write(next);
+    }
+
+    private void write(Outbound outbound) {
+        WriteCallback callback = new WriteCallback() {
+            public void writeSuccess() {
+                Outbound next;
+                synchronized (Outbox.this) {
+                    next = queue.poll();
+                    sending = next != null;
+                }
+                if (next != null) {
+                    write(next);
+                }
+            }
+
+            public void writeFailed(Throwable x) {
+                synchronized (Outbox.this) {
+                    abandoned = true;
+                    sending = false;
+                    queue.clear();
+                }
+                stats.failedSends.incrementAndGet();
+            }
+        };
+        stats.payloadBytes.addAndGet(outbound.length());
+        if (deflate) {
+            stats.deflatePayloadBytes.addAndGet(outbound.length());
+        }
+        if (outbound.bytes() != null) {
+            session.getRemote().sendBytes(ByteBuffer.wrap(outbound.bytes()), callback);
+        } else {
+            session.getRemote().sendString(outbound.text(), callback);
+        }
+    }
+}
@@ -9,67 +9,167 @@ import model.AuthData;
 import model.GameData;
 import org.eclipse.jetty.websocket.api.annotations.*;
 import org.eclipse.jetty.websocket.api.*;
-import requestresult.ListRequest;
 import service.GameService;
 import service.UserService;
+import websocket.BinaryProtocol;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
 import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.nio.ByteBuffer;
 
 @WebSocket
 public class WSServer {
+    private static final Gson GSON = new Gson();
 
     private final ConnectionManager connections;
+    private final GameMailboxes mailboxes;
+    private final HotGameRegistry hotGames;
     private final UserService userService;
     private final GameService gameService;
 
 
     public WSServer(UserService userService, GameService gameService) {
-        this.connections = new ConnectionManager();
+        this(userService, gameService, new ConnectionManager());
+    }
+
+    public WSServer(UserService userService, GameService gameService, ConnectionManager connections) {
+        this.connections = connections;
+        this.mailboxes = new GameMailboxes();
         this.userService = userService;
         this.gameService = gameService;
+        this.hotGames = new HotGameRegistry(gameService);
+        userService.addLogoutListener(connections::revoke);
+        // someone watching a game who then takes a seat in it is served as a player from then on
+        gameService.addJoinListener((gameID, username) -> mailboxes.submit(gameID, () -> seat(gameID, username)));
     }
 
     @OnWebSocketMessage
-    public void onMessage(Session session, String message) throws Exception {
-        var command = new Gson().fromJson(message, UserGameCommand.class);
-        switch (command.getCommandType()) {
-            case CONNECT -> connect(session, command);
-            case MAKE_MOVE -> makeMove(session, message);
-            case LEAVE -> leave(session, command);
-            case RESIGN -> resign(session, command);
+    public void onMessage(Session session, String message) {
+        // every command fits in a MakeMoveCommand, whose move is left null for the others
+        dispatch(session, GSON.fromJson(message, MakeMoveCommand.class));
+    }
+
+    @OnWebSocketMessage
+    public void onMessage(Session session, byte[] payload, int offset, int length) {
+        UserGameCommand command;
+        try {
+            command = BinaryProtocol.decodeCommand(ByteBuffer.wrap(payload, offset, length));
+        } catch (IllegalArgumentException ex) {
+            sendError(session, String.format("Error: %s", ex.getMessage()));
+            return;
+        }
+        dispatch(session, command);
+    }
+
+    private void dispatch(Session session, UserGameCommand command) {
+        // commands for one game run in arrival order, one at a time; other games are not held up
+        int gameID = command.getGameID() == null ? 0 : command.getGameID();
+        mailboxes.submit(gameID, () -> {
+            try {
+                switch (command.getCommandType()) {
+                    case CONNECT -> connect(session, command);
+                    case MAKE_MOVE -> makeMove(session, (MakeMoveCommand) command);
+                    case LEAVE -> leave(session, command);
+                    case RESIGN -> resign(session, command);
+                }
+            } catch (IOException | DataAccessException | RuntimeException ex) {
+                sendError(session, String.format("Error: %s", ex.getMessage()));
+            }
+        });
+    }
+
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        Connection closed = connections.closeSession(session);
+        if (closed != null) {
+            mailboxes.submit(closed.gameID, () -> releaseIfUnattended(closed.gameID));
+        }
+    }
+
+    public void close() {
+        connections.close();
+    }
+
+    /**
+     * Drops the resident copy of a game once its last session has gone
+     */
+    private void releaseIfUnattended(int gameID) {
+        if (connections.getConnectionCount(gameID) == 0) {
+            hotGames.evict(gameID);
+        }
+    }
+
+    /**
+     * Picks up a seat taken over HTTP, so the resident copy of the game knows its new player
+     */
+    private void seat(int gameID, String username) {
+        try {
+            hotGames.reload(gameID);
+        } catch (DataAccessException ex) {
+            // commands reload the seats themselves when they find the player missing
+            System.err.printf("Unable to reload game %d after a join: %s%n", gameID, ex.getMessage());
+        }
+        connections.seat(username, gameID);
+    }
+
+    private void sendError(Session session, String description) {
+        try {
+            connections.send(session, new ErrorMessage(ServerMessage.ServerMessageType.ERROR, description));
+        } catch (IOException ex) {
+            System.err.printf("Unable to send error to client: %s%n", ex.getMessage());
         }
     }
 
     private void connect(Session session, UserGameCommand command) throws IOException {
         String username;
         try {
-            username = getUsernameFromAuth(command.getAuthToken());
+            username = getUsernameFromAuth(session, command.getAuthToken());
         } catch (DataAccessException ex) {
             String notification = String.format("Unable to join game. Error: %s", ex.getMessage());
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, notification);
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
-        connections.add(username, session, command.getGameID());
+        GameData game = retrieveGame(session, command, true);
+        if (game == null) {
+            return;
+        }
 
-        GameData game = retrieveGameFromDatabase(session, command);
+        boolean observer = getPlayerColor(username, game) == null;
+        Connection replaced = connections.add(username, session, command.getGameID(), command.getAuthToken(), observer);
+        if (replaced != null && replaced.gameID != command.getGameID()) {
+            mailboxes.submit(replaced.gameID, () -> releaseIfUnattended(replaced.gameID));
+        }
 
-        if (game != null) {
-            // notifyRootUser LOAD_GAME message
-            LoadGameMessage loadGameMessage = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, game);
-            session.getRemote().sendString(new Gson().toJson(loadGameMessage));
+        // a logout landing after the check above found no connection to revoke, so check again
+        // now that the token is bound; any later logout revokes the connection itself
+        try {
+            userService.authenticate(command.getAuthToken());
+        } catch (DataAccessException ex) {
+            connections.removeSession(session);
+            releaseIfUnattended(command.getGameID());
+            String notification = String.format("Unable to join game. Error: %s", ex.getMessage());
+            connections.send(session, new ErrorMessage(ServerMessage.ServerMessageType.ERROR, notification));
+            return;
+        }
 
-            // notify other clients of connection
-            NotificationMessage notificationMessage = getConnectionDescriptionMessage(game, username);
+        // a client that lost track of its board resends CONNECT on the same session to resync
+        boolean resync = replaced != null && replaced.session == session && replaced.gameID == command.getGameID();
+
+        // notifyRootUser LOAD_GAME message
+        LoadGameMessage loadGameMessage = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, game);
+        connections.send(session, loadGameMessage);
 
+        // notify other clients of connection
+        if (!resync) {
+            NotificationMessage notificationMessage = getConnectionDescriptionMessage(game, username);
             connections.broadcast(username, notificationMessage, game.gameID());
         }
     }
@@ -87,20 +187,20 @@ public class WSServer {
         return new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, notification);
     }
 
-    private void makeMove(Session session, String message) throws IOException, DataAccessException {
-        MakeMoveCommand command = new Gson().fromJson(message, MakeMoveCommand.class);
+    private void makeMove(Session session, MakeMoveCommand command) throws IOException, DataAccessException {
 
         // retrieve game, username from database
         GameData gameData;
         String username;
         try {
-            username = getUsernameFromAuth(command.getAuthToken());
-            gameData = retrieveGameFromDatabase(session, command);
+            username = getUsernameFromAuth(session, command.getAuthToken());
+            gameData = retrieveGame(session, command, false);
             if (gameData == null) { throw new DataAccessException("game not found"); }
+            gameData = withSeatsFor(username, gameData);
         } catch (DataAccessException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Unable to make move. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
@@ -109,38 +209,59 @@ public class WSServer {
         if (thisPlayerColor == null) {
             String errorDescription = String.format("%s is not one of the game players and cannot make a move.", username);
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, String.format("Error: %s", errorDescription));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
 //        Server verifies the validity of the move.
 //        Game is updated to represent the move in the database.
+        ChessGame.TeamColor otherPlayerColor = thisPlayerColor == ChessGame.TeamColor.WHITE ?
+                ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+        boolean checkmate;
+        boolean stalemate;
+        boolean check;
         try {
             if (gameData.game().getBoard().getPiece(command.getMove().getStartPosition()).getTeamColor() != thisPlayerColor) {
                 throw new InvalidMoveException("Move out of turn.");
             }
-            gameData.game().makeMove(command.getMove());
-            gameService.update(gameData);
+            // the move is made on a copy, since the resident board is shared with other sessions and
+            // the stores; the copy replaces it only once the move is recorded, so a failed write
+            // leaves nothing behind that storage never saw
+            ChessGame movedGame = new ChessGame(gameData.game());
+            movedGame.makeMove(command.getMove());
+            checkmate = movedGame.isInCheckmate(otherPlayerColor);
+            stalemate = !checkmate && movedGame.isInStalemate(otherPlayerColor);
+            check = !checkmate && movedGame.isInCheck(otherPlayerColor);
+            GameData movedGameData = new GameData(gameData.gameID(), gameData.whiteUsername(),
+                    gameData.blackUsername(), gameData.gameName(), movedGame, gameData.version());
+            gameService.recordMove(movedGameData, command.getMove());
+            hotGames.publish(movedGameData);
+            gameData = movedGameData;
         } catch (InvalidMoveException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Invalid move attempted. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         } catch (DataAccessException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Database could not be updated. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
-//        Server sends a LOAD_GAME message to all clients in the game (including the root client) with an updated game.
+//        Server sends a LOAD_GAME message to all clients in the game (including the root client) with an updated game,
+//        or just the move to clients that keep their own board.
         try {
+            int status = (check ? MoveMessage.CHECK : 0) | (checkmate ? MoveMessage.CHECKMATE : 0)
+                    | (stalemate ? MoveMessage.STALEMATE : 0) | (checkmate || stalemate ? MoveMessage.GAME_OVER : 0);
+            MoveMessage moveMessage = new MoveMessage(ServerMessage.ServerMessageType.MOVE, gameData.gameID(),
+                    command.getMove(), gameData.game().getMoveCount(), status);
             LoadGameMessage loadGameMessage = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME, gameData);
-            connections.broadcast("", loadGameMessage, gameData.gameID());
+            connections.broadcastGameUpdate(loadGameMessage, moveMessage, gameData.gameID());
         } catch (IOException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Cannot broadcast LOAD_GAME message. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
@@ -152,31 +273,27 @@ public class WSServer {
         } catch (IOException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Cannot notify other clients of move. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
 //        If the move results in check, checkmate or stalemate the server sends a Notification message to all clients.
-        ChessGame.TeamColor otherPlayerColor = getPlayerColor(username, gameData) == ChessGame.TeamColor.WHITE ?
-                ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
         String otherPlayerUsername = getOtherPlayerUsername(username, gameData);
-        if (gameData.game().isInCheckmate(otherPlayerColor)) {
-            gameData.game().endGame();
-            gameService.update(gameData);
+        if (checkmate) {
+            gameService.endGame(gameData);
             String notificationDescription = String.format("%s has checkmated %s! Game over.", username, otherPlayerUsername);
             NotificationMessage notificationMessage = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, notificationDescription);
             connections.broadcast("", notificationMessage, gameData.gameID());
             return;
         }
-        if (gameData.game().isInStalemate(otherPlayerColor)) {
-            gameData.game().endGame();
-            gameService.update(gameData);
+        if (stalemate) {
+            gameService.endGame(gameData);
             String notificationDescription = String.format("%s and %s are in stalemate! Game over.", username, otherPlayerUsername);
             NotificationMessage notificationMessage = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, notificationDescription);
             connections.broadcast("", notificationMessage, gameData.gameID());
             return;
         }
-        if (gameData.game().isInCheck(otherPlayerColor)) {
+        if (check) {
             String notificationDescription = String.format("%s has put %s in check!", username, otherPlayerUsername);
             NotificationMessage notificationMessage = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, notificationDescription);
             connections.broadcast("", notificationMessage, gameData.gameID());
@@ -188,26 +305,22 @@ public class WSServer {
         String username;
         GameData gameData;
         try {
-            username = getUsernameFromAuth(command.getAuthToken());
-            gameData = retrieveGameFromDatabase(session, command);
+            username = getUsernameFromAuth(session, command.getAuthToken());
+            gameData = retrieveGame(session, command, false);
             if (gameData == null) { throw new DataAccessException("game not found"); }
+            gameData = withSeatsFor(username, gameData);
         } catch (DataAccessException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Cannot retrieve information from database necessary to leave game. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
         // remove user from game locally and in database if user is player
         ChessGame.TeamColor currUserColor = getPlayerColor(username, gameData);
-        GameData updatedGame = null;
-        if (currUserColor == ChessGame.TeamColor.WHITE) {
-            updatedGame = new GameData(gameData.gameID(), null, gameData.blackUsername(), gameData.gameName(), gameData.game());
-        } else if (currUserColor == ChessGame.TeamColor.BLACK) {
-            updatedGame = new GameData(gameData.gameID(), gameData.whiteUsername(), null, gameData.gameName(), gameData.game());
-        }
-        if (updatedGame != null) {
-            gameService.update(updatedGame);
+        if (currUserColor != null) {
+            gameService.leave(currUserColor, gameData.gameID());
+            hotGames.vacateSeat(gameData.gameID(), currUserColor);
         }
 
         // notify all users
@@ -215,6 +328,7 @@ public class WSServer {
         NotificationMessage notificationMessage = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, notificationDescription);
         connections.broadcast(username, notificationMessage, gameData.gameID());
         connections.remove(username);
+        releaseIfUnattended(gameData.gameID());
     }
 
     private void resign(Session session, UserGameCommand command) throws IOException, DataAccessException {
@@ -222,13 +336,14 @@ public class WSServer {
         String username;
         GameData gameData;
         try {
-            username = getUsernameFromAuth(command.getAuthToken());
-            gameData = retrieveGameFromDatabase(session, command);
+            username = getUsernameFromAuth(session, command.getAuthToken());
+            gameData = retrieveGame(session, command, false);
             if (gameData == null) { throw new DataAccessException("game not found"); }
+            gameData = withSeatsFor(username, gameData);
         } catch (DataAccessException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Cannot retrieve necessary information from database to resign. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
@@ -237,7 +352,7 @@ public class WSServer {
         if (thisPlayerColor == null) {
             String errorDescription = String.format("%s is not one of the game players and cannot resign.", username);
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, String.format("Error: %s", errorDescription));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
@@ -245,45 +360,59 @@ public class WSServer {
         if (gameData.game().isGameOver()) {
             String errorDescription = String.format("Game %s has already ended and cannot be resigned.", gameData.gameName());
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR, String.format("Error: %s", errorDescription));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             return;
         }
 
         // end game, update in database, notify all users
-        gameData.game().endGame();
-        gameService.update(gameData);
+        gameService.endGame(gameData);
         String otherPlayerUsername = getOtherPlayerUsername(username, gameData);
         String notificationDescription = String.format("%s has resigned to %s! Game over.", username, otherPlayerUsername);
         NotificationMessage notificationMessage = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, notificationDescription);
         connections.broadcast("", notificationMessage, gameData.gameID());
     }
 
-    private String getUsernameFromAuth(String authToken) throws DataAccessException {
+    private String getUsernameFromAuth(Session session, String authToken) throws DataAccessException {
+        // a session that connected with this token already proved who it is
+        String username = connections.authenticatedUsername(session, authToken);
+        if (username != null) {
+            return username;
+        }
         AuthData authData = userService.authenticate(authToken);
         return authData.username();
     }
 
-    private GameData retrieveGameFromDatabase(Session session, UserGameCommand command) throws IOException {
-        Collection<GameData> gameList;
+    private GameData retrieveGame(Session session, UserGameCommand command, boolean attach) throws IOException {
+        GameData game;
         try {
-            gameList = gameService.list(new ListRequest(command.getAuthToken())).games();
+            game = attach ? hotGames.attach(command.getGameID()) : hotGames.get(command.getGameID());
         } catch (DataAccessException ex) {
             ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                     String.format("Game cannot be retrieved from database. Error: %s", ex.getMessage()));
-            session.getRemote().sendString(new Gson().toJson(errorMessage));
+            connections.send(session, errorMessage);
             throw new IOException(ex.getMessage());
         }
-        for (GameData currGame : gameList) {
-            if (currGame.gameID() == command.getGameID()) {
-                return currGame;
-            }
+        if (game != null) {
+            return game;
         }
         ErrorMessage errorMessage = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                 String.format("Error: no game found with gameID %d", command.getGameID()));
-        session.getRemote().sendString(new Gson().toJson(errorMessage));
+        connections.send(session, errorMessage);
         return null;
     }
 
+    /**
+     * The game as the resident copy has it, unless the user holds no seat there, in which case
+     * the seats are read again in case one was taken over HTTP since the game was loaded
+     */
+    private GameData withSeatsFor(String username, GameData gameData) throws DataAccessException {
+        if (getPlayerColor(username, gameData) != null) {
+            return gameData;
+        }
+        GameData reloaded = hotGames.reload(gameData.gameID());
+        return reloaded == null ? gameData : reloaded;
+    }
+
     private ChessGame.TeamColor getPlayerColor(String myUsername, GameData gameData) {
         if (myUsername.equals(gameData.whiteUsername())) {
             return ChessGame.TeamColor.WHITE;
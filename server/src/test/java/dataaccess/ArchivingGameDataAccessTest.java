@@ -0,0 +1,124 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.GameData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchivingGameDataAccessTest {
+    private static final ChessMove FIRST_MOVE = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+    @TempDir
+    Path archiveDir;
+
+    @Test
+    void endedGameMovesToArchive() throws Exception {
+        MemoryGameDataAccess liveGames = new MemoryGameDataAccess();
+        ArchivingGameDataAccess gameDataAccess = new ArchivingGameDataAccess(liveGames, archiveDir);
+
+        GameData gameData = endedGameWithOneMove(gameDataAccess);
+
+        assertNull(liveGames.getGame(gameData.gameID()));
+        GameData archivedGame = gameDataAccess.getGame(gameData.gameID());
+        assertTrue(archivedGame.game().isGameOver());
+        assertEquals("whitePlayer", archivedGame.whiteUsername());
+        assertEquals(List.of(FIRST_MOVE), gameDataAccess.listMoves(gameData.gameID()));
+        assertEquals(1, gameDataAccess.listAllGames().size());
+    }
+
+    @Test
+    void archiveIsReadBackAfterReopen() throws Exception {
+        ArchivingGameDataAccess gameDataAccess = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        GameData gameData = endedGameWithOneMove(gameDataAccess);
+        gameDataAccess.close();
+
+        ArchivingGameDataAccess reopened = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        assertEquals(1, reopened.getArchivedGameCount());
+        assertEquals(gameData.game(), reopened.getGame(gameData.gameID()).game());
+    }
+
+    @Test
+    void archiveIsOnlyClearedOnceTheClearCommits() throws Exception {
+        ArchivingGameDataAccess gameDataAccess = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        endedGameWithOneMove(gameDataAccess);
+
+        // a transaction that ends without committing
+        AfterCommit.begin();
+        gameDataAccess.deleteAllGames();
+        assertEquals(1, gameDataAccess.getArchivedGameCount());
+        AfterCommit.end();
+        assertEquals(1, gameDataAccess.getArchivedGameCount());
+
+        AfterCommit.begin();
+        gameDataAccess.deleteAllGames();
+        AfterCommit.runAll(AfterCommit.end());
+        assertEquals(0, gameDataAccess.getArchivedGameCount());
+    }
+
+    @Test
+    void leavingArchivedGameKeepsItArchived() throws Exception {
+        ArchivingGameDataAccess gameDataAccess = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        GameData gameData = endedGameWithOneMove(gameDataAccess);
+
+        gameDataAccess.leaveGame(ChessGame.TeamColor.WHITE, gameData.gameID());
+
+        GameData archivedGame = gameDataAccess.getGame(gameData.gameID());
+        assertNull(archivedGame.whiteUsername());
+        assertEquals(List.of(FIRST_MOVE), gameDataAccess.listMoves(gameData.gameID()));
+        assertEquals(1, gameDataAccess.getArchivedGameCount());
+    }
+
+    @Test
+    void archivedGameRejectsMoves() throws Exception {
+        ArchivingGameDataAccess gameDataAccess = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        GameData gameData = endedGameWithOneMove(gameDataAccess);
+
+        assertThrows(DataAccessException.class, () -> gameDataAccess.recordMove(gameData, FIRST_MOVE));
+    }
+
+    @Test
+    void listingMatchesTheArchivedRecords() throws Exception {
+        ArchivingGameDataAccess gameDataAccess = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        GameData gameData = endedGameWithOneMove(gameDataAccess);
+        gameDataAccess.joinGame(ChessGame.TeamColor.BLACK, gameData.gameID(), "blackPlayer");
+        gameDataAccess.close();
+
+        ArchivingGameDataAccess reopened = new ArchivingGameDataAccess(new MemoryGameDataAccess(), archiveDir);
+        GameData listedGame = reopened.listAllGames().iterator().next();
+        GameData archivedGame = reopened.getGame(gameData.gameID());
+        assertEquals("blackPlayer", listedGame.blackUsername());
+        assertEquals(archivedGame.whiteUsername(), listedGame.whiteUsername());
+        assertEquals(archivedGame.gameName(), listedGame.gameName());
+        assertEquals(archivedGame.game(), listedGame.game());
+        assertTrue(listedGame.game().isGameOver());
+    }
+
+    @Test
+    void archiveSpillsIntoNewSegments() throws Exception {
+        GameArchive archive = new GameArchive(archiveDir, 4096);
+        for (int gameID = 1; gameID <= 10; gameID++) {
+            archive.append(new GameData(gameID, null, null, "game" + gameID, new ChessGame()), List.of());
+        }
+        archive.close();
+
+        GameArchive reopened = new GameArchive(archiveDir, 4096);
+        assertEquals(10, reopened.size());
+        assertEquals("game7", reopened.read(7).gameData().gameName());
+    }
+
+    private GameData endedGameWithOneMove(GameDataAccess gameDataAccess) throws Exception {
+        GameData gameData = gameDataAccess.createGame("archivedGame");
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, gameData.gameID(), "whitePlayer");
+        gameData.game().makeMove(FIRST_MOVE);
+        gameDataAccess.recordMove(gameData, FIRST_MOVE);
+        gameDataAccess.endGame(gameData.gameID());
+        return gameData;
+    }
+}
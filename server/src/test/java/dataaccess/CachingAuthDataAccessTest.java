@@ -0,0 +1,53 @@
+package dataaccess;
+
+import model.AuthData;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingAuthDataAccessTest {
+    private static final long NEVER = 60_000;
+
+    @Test
+    void createdAuthIsServedFromCache() throws Exception {
+        CachingAuthDataAccess authDataAccess = new CachingAuthDataAccess(new MemoryAuthDataAccess(), 8, NEVER);
+
+        AuthData auth = authDataAccess.createAuth("cachedUser");
+
+        assertEquals(auth, authDataAccess.retrieveAuthByAuthToken(auth.authToken()));
+        assertEquals(1, authDataAccess.getHits());
+        assertEquals(0, authDataAccess.getMisses());
+    }
+
+    @Test
+    void deleteAuthInvalidatesImmediately() throws Exception {
+        CachingAuthDataAccess authDataAccess = new CachingAuthDataAccess(new MemoryAuthDataAccess(), 8, NEVER);
+
+        AuthData auth = authDataAccess.createAuth("loggingOutUser");
+        authDataAccess.deleteAuth(auth.authToken());
+
+        assertNull(authDataAccess.retrieveAuthByAuthToken(auth.authToken()));
+    }
+
+    @Test
+    void deleteAllAuthsInvalidatesImmediately() throws Exception {
+        CachingAuthDataAccess authDataAccess = new CachingAuthDataAccess(new MemoryAuthDataAccess(), 8, NEVER);
+
+        AuthData auth = authDataAccess.createAuth("clearedUser");
+        authDataAccess.deleteAllAuths();
+
+        assertNull(authDataAccess.retrieveAuthByAuthToken(auth.authToken()));
+        assertEquals(0, authDataAccess.size());
+    }
+
+    @Test
+    void cacheNeverExceedsMaxEntries() throws Exception {
+        CachingAuthDataAccess authDataAccess = new CachingAuthDataAccess(new MemoryAuthDataAccess(), 2, NEVER);
+
+        authDataAccess.createAuth("first");
+        authDataAccess.createAuth("second");
+        authDataAccess.createAuth("third");
+
+        assertEquals(2, authDataAccess.size());
+    }
+}
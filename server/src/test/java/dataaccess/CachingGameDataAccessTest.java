@@ -0,0 +1,62 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.GameData;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingGameDataAccessTest {
+    private static final long NEVER = 60_000;
+
+    @Test
+    void repeatedReadsAreHits() throws Exception {
+        CachingGameDataAccess gameDataAccess = new CachingGameDataAccess(new MemoryGameDataAccess(), 8, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("cachedGame");
+        gameDataAccess.getGame(gameData.gameID());
+        gameDataAccess.getGame(gameData.gameID());
+
+        assertEquals(2, gameDataAccess.getHits());
+        assertEquals(0, gameDataAccess.getMisses());
+    }
+
+    @Test
+    void joinInvalidatesEntry() throws Exception {
+        CachingGameDataAccess gameDataAccess = new CachingGameDataAccess(new MemoryGameDataAccess(), 8, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("cachedGame");
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, gameData.gameID(), "joiningUser");
+        GameData retrievedGame = gameDataAccess.getGame(gameData.gameID());
+
+        assertEquals("joiningUser", retrievedGame.whiteUsername());
+        assertEquals(1, gameDataAccess.getMisses());
+    }
+
+    @Test
+    void leastRecentlyUsedGameIsEvicted() throws Exception {
+        CachingGameDataAccess gameDataAccess = new CachingGameDataAccess(new MemoryGameDataAccess(), 2, NEVER);
+
+        GameData first = gameDataAccess.createGame("first");
+        GameData second = gameDataAccess.createGame("second");
+        gameDataAccess.getGame(first.gameID());
+        gameDataAccess.createGame("third");
+
+        assertEquals(2, gameDataAccess.size());
+        assertEquals(1, gameDataAccess.getEvictions());
+        gameDataAccess.getGame(second.gameID());
+        assertEquals(1, gameDataAccess.getMisses());
+    }
+
+    @Test
+    void expiredEntryIsReloaded() throws Exception {
+        CachingGameDataAccess gameDataAccess = new CachingGameDataAccess(new MemoryGameDataAccess(), 8, 0);
+
+        GameData gameData = gameDataAccess.createGame("cachedGame");
+        Thread.sleep(5);
+        gameDataAccess.getGame(gameData.gameID());
+
+        assertEquals(1, gameDataAccess.getMisses());
+        assertEquals(1, gameDataAccess.getEvictions());
+    }
+}
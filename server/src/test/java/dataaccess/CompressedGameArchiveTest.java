@@ -0,0 +1,95 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.GameData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedGameArchiveTest {
+    private static final ChessMove FIRST_MOVE = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+    private static final int GAME_COUNT = 25;
+
+    @TempDir
+    Path archiveDir;
+
+    @Test
+    void gamesAreReadBackByID() throws Exception {
+        Path file = writeArchive();
+
+        try (CompressedGameArchive archive = CompressedGameArchive.open(file)) {
+            assertEquals(GAME_COUNT, archive.size());
+            ArchivedGame archivedGame = archive.read(17);
+            assertEquals("game17", archivedGame.gameData().gameName());
+            assertEquals(List.of(FIRST_MOVE), archivedGame.unpackedMoves());
+            assertEquals(1, archivedGame.gameData().game().getMoveCount());
+            assertNull(archive.read(GAME_COUNT + 1));
+        }
+    }
+
+    @Test
+    void blocksAreSmallerThanTheirJson() throws Exception {
+        Path file = archiveDir.resolve("games.cga");
+        CompressedGameArchive.Writer writer = new CompressedGameArchive.Writer(file, 10, Deflater.DEFAULT_COMPRESSION);
+        try (writer) {
+            addGames(writer);
+        }
+
+        assertTrue(writer.getCompressedBytes() * 5 < writer.getUncompressedBytes());
+        assertTrue(Files.size(file) < writer.getUncompressedBytes());
+    }
+
+    @Test
+    void forEachVisitsEveryGameInOrder() throws Exception {
+        Path file = writeArchive();
+
+        List<Integer> visited = new ArrayList<>();
+        try (CompressedGameArchive archive = CompressedGameArchive.open(file)) {
+            archive.forEach(archivedGame -> visited.add(archivedGame.gameData().gameID()));
+        }
+        assertEquals(IntStream.rangeClosed(1, GAME_COUNT).boxed().toList(), visited);
+    }
+
+    @Test
+    void fileWithoutIndexIsScanned() throws Exception {
+        Path file = writeArchive();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // cut off the index and trailer, as a crash before close would
+            channel.truncate(channel.size() - 12 - GAME_COUNT * 12 - 4);
+        }
+
+        try (CompressedGameArchive archive = CompressedGameArchive.open(file)) {
+            assertEquals(GAME_COUNT, archive.size());
+            assertEquals("game3", archive.read(3).gameData().gameName());
+        }
+    }
+
+    private Path writeArchive() throws Exception {
+        Path file = archiveDir.resolve("games.cga");
+        try (CompressedGameArchive.Writer writer = new CompressedGameArchive.Writer(file, 10, Deflater.BEST_COMPRESSION)) {
+            addGames(writer);
+        }
+        return file;
+    }
+
+    private void addGames(CompressedGameArchive.Writer writer) throws Exception {
+        for (int gameID = 1; gameID <= GAME_COUNT; gameID++) {
+            ChessGame game = new ChessGame();
+            game.makeMove(FIRST_MOVE);
+            game.endGame();
+            writer.add(new GameData(gameID, "white", "black", "game" + gameID, game), List.of(FIRST_MOVE));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DurableMemoryStoreTest {
+    private static final ChessMove FIRST_MOVE = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+    private static final ChessMove SECOND_MOVE = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void logIsReplayedAfterCrash() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        GameData gameData = populate(store);
+
+        // no close, so nothing but the log is on disk
+        DurableMemoryStore recovered = new DurableMemoryStore(dataDir);
+        assertRecovered(recovered, gameData);
+    }
+
+    @Test
+    void snapshotPlusLogTailIsReplayed() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        GameData gameData = populate(store);
+        store.snapshot();
+        store.userDataAccess().addUser(new UserData("afterSnapshot", "password", "email"));
+
+        DurableMemoryStore recovered = new DurableMemoryStore(dataDir);
+        assertRecovered(recovered, gameData);
+        assertNotNull(recovered.userDataAccess().getUser("afterSnapshot"));
+    }
+
+    @Test
+    void moveOnACopyIsPublishedByRecordMove() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        GameDataAccess games = store.gameDataAccess();
+        GameData stored = games.createGame("copiedGame");
+
+        ChessGame movedGame = new ChessGame(stored.game());
+        movedGame.makeMove(FIRST_MOVE);
+        assertEquals(0, games.getGame(stored.gameID()).game().getMoveCount());
+
+        games.recordMove(new GameData(stored.gameID(), null, null, "copiedGame", movedGame), FIRST_MOVE);
+        assertEquals(movedGame, games.getGame(stored.gameID()).game());
+        assertEquals(movedGame, new DurableMemoryStore(dataDir).gameDataAccess().getGame(stored.gameID()).game());
+    }
+
+    @Test
+    void tornLogTailIsDropped() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        GameData gameData = populate(store);
+        Path segment = WriteAheadLog.segmentPath(dataDir, WriteAheadLog.listSegments(dataDir).get(0));
+        Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        DurableMemoryStore recovered = new DurableMemoryStore(dataDir);
+        assertRecovered(recovered, gameData);
+        recovered.userDataAccess().addUser(new UserData("laterUser", "password", "email"));
+
+        assertNotNull(new DurableMemoryStore(dataDir).userDataAccess().getUser("laterUser"));
+    }
+
+    @Test
+    void gameIDsAreNotReusedAfterClear() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        int firstGameID = store.gameDataAccess().createGame("cleared").gameID();
+        store.gameDataAccess().deleteAllGames();
+        store.close();
+
+        DurableMemoryStore recovered = new DurableMemoryStore(dataDir);
+        assertNotEquals(firstGameID, recovered.gameDataAccess().createGame("fresh").gameID());
+    }
+
+    @Test
+    void rejectedMutationIsRejectedAgainOnReplay() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        store.userDataAccess().addUser(new UserData("takenName", "first", "email"));
+        assertThrows(DataAccessException.class,
+                () -> store.userDataAccess().addUser(new UserData("takenName", "second", "email")));
+
+        DurableMemoryStore recovered = new DurableMemoryStore(dataDir);
+        assertEquals("first", recovered.userDataAccess().getUser("takenName").password());
+        assertEquals(1, recovered.userDataAccess().getNumUsers());
+    }
+
+    @Test
+    void sessionTimesSurviveRestart() throws Exception {
+        DurableMemoryStore store = new DurableMemoryStore(dataDir);
+        store.authDataAccess().createAuth("loggedFromLog");
+        store.snapshot();
+        store.authDataAccess().createAuth("loggedFromSnapshot");
+        long issuedBy = System.currentTimeMillis() + 1;
+        Thread.sleep(20);
+
+        // sessions issued before the restart are still that old after it
+        DurableMemoryStore recovered = new DurableMemoryStore(dataDir);
+        assertEquals(2, recovered.authDataAccess().deleteExpiredAuths(0, issuedBy, 10));
+    }
+
+    private GameData populate(DurableMemoryStore store) throws Exception {
+        store.userDataAccess().addUser(new UserData("durableUser", "password", "email"));
+        AuthData authData = store.authDataAccess().createAuth("durableUser");
+        store.authDataAccess().deleteAuth(authData.authToken());
+        store.authDataAccess().createAuth("durableUser");
+
+        GameDataAccess gameDataAccess = store.gameDataAccess();
+        GameData gameData = gameDataAccess.createGame("durableGame");
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, gameData.gameID(), "durableUser");
+        gameData.game().makeMove(FIRST_MOVE);
+        gameDataAccess.recordMove(gameData, FIRST_MOVE);
+        gameData.game().makeMove(SECOND_MOVE);
+        gameDataAccess.recordMove(gameData, SECOND_MOVE);
+        return gameDataAccess.getGame(gameData.gameID());
+    }
+
+    private void assertRecovered(DurableMemoryStore store, GameData expected) throws Exception {
+        assertNotNull(store.userDataAccess().getUser("durableUser"));
+        assertEquals(1, store.authDataAccess().retrieveNumAuths());
+
+        GameData recoveredGame = store.gameDataAccess().getGame(expected.gameID());
+        assertEquals("durableUser", recoveredGame.whiteUsername());
+        assertEquals(expected.version(), recoveredGame.version());
+        assertEquals(expected.game(), recoveredGame.game());
+        assertEquals(List.of(FIRST_MOVE, SECOND_MOVE), store.gameDataAccess().listMoves(expected.gameID()));
+    }
+}
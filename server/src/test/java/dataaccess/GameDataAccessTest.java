@@ -1,6 +1,8 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
 import model.GameData;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -8,6 +10,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +51,20 @@ public class GameDataAccessTest {
         assertEquals(0, gameDataAccess.listAllGames().size());
     }
 
+    // deleteGame
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void deleteGameRemovesOnlyThatGame(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData gameToDelete = gameDataAccess.createGame("gameToDelete");
+        GameData gameToKeep = gameDataAccess.createGame("gameToKeep");
+        gameDataAccess.deleteGame(gameToDelete.gameID());
+
+        assertNull(gameDataAccess.getGame(gameToDelete.gameID()));
+        assertNotNull(gameDataAccess.getGame(gameToKeep.gameID()));
+    }
+
     // listAllGames
     @ParameterizedTest
     @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
@@ -96,4 +113,95 @@ public class GameDataAccessTest {
 
         assertThrows(DataAccessException.class, () -> gameDataAccess.joinGame(ChessGame.TeamColor.BLACK, gameToJoin.gameID(), user2));
     }
+
+    // getGame
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void getGameNormal(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData newGame = gameDataAccess.createGame("newGame");
+
+        assertEquals(newGame, gameDataAccess.getGame(newGame.gameID()));
+    }
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void getNonexistentGameReturnsNull(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        gameDataAccess.deleteAllGames();
+
+        assertNull(gameDataAccess.getGame(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void joinGameBumpsVersion(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData gameToJoin = gameDataAccess.createGame("gameToJoin");
+        int versionBefore = gameDataAccess.getGame(gameToJoin.gameID()).version();
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, gameToJoin.gameID(), "versionedUser");
+
+        assertEquals(versionBefore + 1, gameDataAccess.getGame(gameToJoin.gameID()).version());
+    }
+
+    // updateGame
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void updateGameStaleVersionThrowsConflict(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData staleCopy = gameDataAccess.createGame("gameToUpdate");
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, staleCopy.gameID(), "firstWriter");
+
+        DataAccessException ex = assertThrows(DataAccessException.class, () -> gameDataAccess.updateGame(staleCopy));
+        assertEquals("conflict", ex.getMessage());
+        assertEquals("firstWriter", gameDataAccess.getGame(staleCopy.gameID()).whiteUsername());
+    }
+
+    // leaveGame
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void leaveGameFreesSpot(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData gameToLeave = gameDataAccess.createGame("gameToLeave");
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, gameToLeave.gameID(), "userWantingOut");
+        gameDataAccess.leaveGame(ChessGame.TeamColor.WHITE, gameToLeave.gameID());
+
+        assertNull(gameDataAccess.getGame(gameToLeave.gameID()).whiteUsername());
+    }
+
+    // recordMove
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void recordMoveIsReplayed(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData gameData = gameDataAccess.createGame("gameWithMoves");
+        ChessMove first = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        ChessMove second = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+        gameData.game().makeMove(first);
+        gameDataAccess.recordMove(gameData, first);
+        gameData.game().makeMove(second);
+        gameDataAccess.recordMove(gameData, second);
+
+        GameData retrievedGame = gameDataAccess.getGame(gameData.gameID());
+        assertEquals(gameData.game(), retrievedGame.game());
+        assertEquals(2, retrievedGame.game().getMoveCount());
+        assertEquals(List.of(first, second), gameDataAccess.listMoves(gameData.gameID()));
+    }
+
+    // endGame
+    @ParameterizedTest
+    @ValueSource(classes = {MySQLGameDataAccess.class, MemoryGameDataAccess.class})
+    void endGameIsPersisted(Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        GameDataAccess gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+
+        GameData gameToEnd = gameDataAccess.createGame("gameToEnd");
+        gameDataAccess.endGame(gameToEnd.gameID());
+
+        assertTrue(gameDataAccess.getGame(gameToEnd.gameID()).game().isGameOver());
+    }
 }
@@ -0,0 +1,55 @@
+package dataaccess;
+
+import model.AuthData;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionSweeperTest {
+    private static final long NEVER = 60 * 60 * 1000;
+
+    @Test
+    void idleSessionsArePurgedAndUsedOnesKept() throws Exception {
+        MemoryAuthDataAccess authDataAccess = new MemoryAuthDataAccess();
+        AuthData idle = authDataAccess.createAuth("idle");
+        AuthData active = authDataAccess.createAuth("active");
+        Thread.sleep(60);
+        authDataAccess.retrieveAuthByAuthToken(active.authToken());
+
+        try (SessionSweeper sweeper = new SessionSweeper(authDataAccess, 40, NEVER, NEVER, 100, 10)) {
+            assertEquals(1, sweeper.sweep());
+            assertEquals(1, sweeper.getPurgedCount());
+        }
+        assertNull(authDataAccess.retrieveAuthByAuthToken(idle.authToken()));
+        assertEquals(active, authDataAccess.retrieveAuthByAuthToken(active.authToken()));
+    }
+
+    @Test
+    void sessionsPastAbsoluteTtlArePurgedEvenIfUsed() throws Exception {
+        MemoryAuthDataAccess authDataAccess = new MemoryAuthDataAccess();
+        AuthData old = authDataAccess.createAuth("old");
+        Thread.sleep(60);
+        authDataAccess.retrieveAuthByAuthToken(old.authToken());
+
+        try (SessionSweeper sweeper = new SessionSweeper(authDataAccess, NEVER, 40, NEVER, 100, 10)) {
+            assertEquals(1, sweeper.sweep());
+        }
+        assertEquals(0, authDataAccess.retrieveNumAuths());
+    }
+
+    @Test
+    void sweepStopsAfterItsBatchLimit() throws Exception {
+        MemoryAuthDataAccess authDataAccess = new MemoryAuthDataAccess();
+        for (int i = 0; i < 5; i++) {
+            authDataAccess.createAuth("user" + i);
+        }
+        Thread.sleep(10);
+
+        try (SessionSweeper sweeper = new SessionSweeper(authDataAccess, 1, NEVER, NEVER, 2, 2)) {
+            assertEquals(4, sweeper.sweep());
+            assertEquals(1, authDataAccess.retrieveNumAuths());
+            assertEquals(1, sweeper.sweep());
+            assertEquals(5, sweeper.getPurgedCount());
+        }
+    }
+}
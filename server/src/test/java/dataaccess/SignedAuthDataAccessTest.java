@@ -0,0 +1,87 @@
+package dataaccess;
+
+import model.AuthData;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignedAuthDataAccessTest {
+    private static final byte[] KEY = new byte[32];
+    private static final long NEVER = 60_000;
+
+    @Test
+    void signedTokenVerifiesWithoutTouchingDelegate() throws Exception {
+        MemoryAuthDataAccess stored = new MemoryAuthDataAccess();
+        SignedAuthDataAccess authDataAccess = new SignedAuthDataAccess(stored, KEY, NEVER, 0);
+
+        AuthData auth = authDataAccess.createAuth("signed.user");
+
+        assertEquals(auth, authDataAccess.retrieveAuthByAuthToken(auth.authToken()));
+        assertEquals(0, stored.retrieveNumAuths());
+    }
+
+    @Test
+    void tokenFromAnotherServerWithSameKeyIsAccepted() throws Exception {
+        AuthData auth = new SignedAuthDataAccess(new MemoryAuthDataAccess(), KEY, NEVER, 3).createAuth("roaming");
+        SignedAuthDataAccess otherServer = new SignedAuthDataAccess(new MemoryAuthDataAccess(), KEY, NEVER, 3);
+
+        assertEquals(auth, otherServer.retrieveAuthByAuthToken(auth.authToken()));
+    }
+
+    @Test
+    void tamperedOrForeignTokensAreRejected() throws Exception {
+        SignedAuthDataAccess authDataAccess = new SignedAuthDataAccess(new MemoryAuthDataAccess(), KEY, NEVER, 0);
+        String token = authDataAccess.createAuth("victim").authToken();
+        String[] fields = token.split("\\.");
+        fields[2] = Long.toString(Long.parseLong(fields[2]) + NEVER);
+
+        byte[] otherKey = Arrays.copyOf(KEY, KEY.length);
+        otherKey[0] = 1;
+        String foreignToken = new SignedAuthDataAccess(new MemoryAuthDataAccess(), otherKey, NEVER, 0)
+                .createAuth("victim").authToken();
+
+        assertNull(authDataAccess.retrieveAuthByAuthToken(String.join(".", fields)));
+        assertNull(authDataAccess.retrieveAuthByAuthToken(foreignToken));
+        assertNull(authDataAccess.retrieveAuthByAuthToken("v1.garbage"));
+    }
+
+    @Test
+    void expiredTokenIsRejected() throws Exception {
+        SignedAuthDataAccess authDataAccess = new SignedAuthDataAccess(new MemoryAuthDataAccess(), KEY, 1, 0);
+
+        AuthData auth = authDataAccess.createAuth("sleepy");
+        Thread.sleep(10);
+
+        assertNull(authDataAccess.retrieveAuthByAuthToken(auth.authToken()));
+    }
+
+    @Test
+    void logoutAndClearRevokeTokens() throws Exception {
+        SignedAuthDataAccess authDataAccess = new SignedAuthDataAccess(new MemoryAuthDataAccess(), KEY, NEVER, 0);
+
+        AuthData loggedOut = authDataAccess.createAuth("leaving");
+        AuthData cleared = authDataAccess.createAuth("staying");
+        authDataAccess.deleteAuth(loggedOut.authToken());
+
+        assertNull(authDataAccess.retrieveAuthByAuthToken(loggedOut.authToken()));
+        assertEquals(cleared, authDataAccess.retrieveAuthByAuthToken(cleared.authToken()));
+
+        authDataAccess.deleteAllAuths();
+
+        assertNull(authDataAccess.retrieveAuthByAuthToken(cleared.authToken()));
+        assertEquals(0, authDataAccess.getRevokedCount());
+    }
+
+    @Test
+    void storedTokensStillWork() throws Exception {
+        MemoryAuthDataAccess stored = new MemoryAuthDataAccess();
+        AuthData legacy = stored.createAuth("legacy");
+        SignedAuthDataAccess authDataAccess = new SignedAuthDataAccess(stored, KEY, NEVER, 0);
+
+        assertEquals(legacy, authDataAccess.retrieveAuthByAuthToken(legacy.authToken()));
+        authDataAccess.deleteAuth(legacy.authToken());
+        assertNull(authDataAccess.retrieveAuthByAuthToken(legacy.authToken()));
+    }
+}
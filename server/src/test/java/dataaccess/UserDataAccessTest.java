@@ -7,6 +7,13 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class UserDataAccessTest {
@@ -91,6 +98,55 @@ class UserDataAccessTest {
         assertThrows(NullPointerException.class, () -> sqlUserDataAccess.getNumUsers());
         assertThrows(NullPointerException.class, () -> memUserDataAccess.getNumUsers());
     }
+    @Test
+    void concurrentAddUserSameUsernameOnlyOneSucceeds() throws Exception {
+        MemoryUserDataAccess database = new MemoryUserDataAccess();
+        int numThreads = 8;
+        var pool = Executors.newFixedThreadPool(numThreads);
+        var start = new CountDownLatch(1);
+        var successes = new AtomicInteger();
+        try {
+            List<Future<?>> attempts = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                attempts.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        database.addUser(newUser);
+                        successes.incrementAndGet();
+                    } catch (DataAccessException ex) {
+                        assertEquals("already taken", ex.getMessage());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> attempt : attempts) {
+                attempt.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, successes.get());
+        assertEquals(1, database.getNumUsers());
+    }
+
+    @Test
+    void failedTransactionRollsBackUserAndAuth() throws Exception {
+        MySQLUserDataAccess users = new MySQLUserDataAccess();
+        MySQLAuthDataAccess auths = new MySQLAuthDataAccess();
+        UserData user = new UserData("rolledBackUser", "hashedPassword", "rolledBack@test.com");
+
+        DataAccessException ex = assertThrows(DataAccessException.class, () ->
+                new MySQLTransactionManager().inTransaction(() -> {
+                    users.addUser(user);
+                    auths.createAuth(user.username());
+                    throw new DataAccessException("bad request");
+                }));
+
+        assertEquals("bad request", ex.getMessage());
+        assertNull(users.getUser(user.username()));
+        assertNull(auths.retrieveAuthByUsername(user.username()));
+    }
 
     private void addExistingUserIfNotAlreadyAdded(UserDataAccess database) throws DataAccessException {
         try {
@@ -0,0 +1,93 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import model.GameData;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindGameDataAccessTest {
+    private static final long NEVER = 60_000;
+    private static final ChessMove FIRST_MOVE = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+    private static final ChessMove SECOND_MOVE = new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null);
+
+    @Test
+    void movesAreVisibleBeforeFlush() throws Exception {
+        MemoryGameDataAccess storedGames = new MemoryGameDataAccess();
+        WriteBehindGameDataAccess gameDataAccess = new WriteBehindGameDataAccess(storedGames, 16, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("writeBehindGame");
+        gameData.game().makeMove(FIRST_MOVE);
+        gameDataAccess.recordMove(gameData, FIRST_MOVE);
+
+        assertEquals(1, gameDataAccess.getGame(gameData.gameID()).game().getMoveCount());
+        assertEquals(List.of(), storedGames.listMoves(gameData.gameID()));
+    }
+
+    @Test
+    void flushWritesCoalescedMovesInOrder() throws Exception {
+        MemoryGameDataAccess storedGames = new MemoryGameDataAccess();
+        WriteBehindGameDataAccess gameDataAccess = new WriteBehindGameDataAccess(storedGames, 16, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("writeBehindGame");
+        gameData.game().makeMove(FIRST_MOVE);
+        gameDataAccess.recordMove(gameData, FIRST_MOVE);
+        gameData.game().makeMove(SECOND_MOVE);
+        gameDataAccess.recordMove(gameData, SECOND_MOVE);
+        gameDataAccess.flush();
+
+        assertEquals(List.of(FIRST_MOVE, SECOND_MOVE), storedGames.listMoves(gameData.gameID()));
+    }
+
+    @Test
+    void leaveAndEndAreWrittenOnClose() throws Exception {
+        MemoryGameDataAccess storedGames = new MemoryGameDataAccess();
+        WriteBehindGameDataAccess gameDataAccess = new WriteBehindGameDataAccess(storedGames, 16, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("writeBehindGame");
+        gameDataAccess.joinGame(ChessGame.TeamColor.WHITE, gameData.gameID(), "leavingUser");
+        gameDataAccess.leaveGame(ChessGame.TeamColor.WHITE, gameData.gameID());
+        gameDataAccess.endGame(gameData.gameID());
+
+        assertNull(gameDataAccess.getGame(gameData.gameID()).whiteUsername());
+        gameDataAccess.close();
+
+        GameData storedGame = storedGames.getGame(gameData.gameID());
+        assertNull(storedGame.whiteUsername());
+        assertTrue(storedGame.game().isGameOver());
+    }
+
+    @Test
+    void joinSeesPendingLeave() throws Exception {
+        MemoryGameDataAccess storedGames = new MemoryGameDataAccess();
+        WriteBehindGameDataAccess gameDataAccess = new WriteBehindGameDataAccess(storedGames, 16, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("writeBehindGame");
+        gameDataAccess.joinGame(ChessGame.TeamColor.BLACK, gameData.gameID(), "leavingUser");
+        gameDataAccess.leaveGame(ChessGame.TeamColor.BLACK, gameData.gameID());
+        gameDataAccess.joinGame(ChessGame.TeamColor.BLACK, gameData.gameID(), "joiningUser");
+
+        assertEquals("joiningUser", gameDataAccess.getGame(gameData.gameID()).blackUsername());
+    }
+
+    @Test
+    void readersGetTheirOwnBoard() throws Exception {
+        WriteBehindGameDataAccess gameDataAccess = new WriteBehindGameDataAccess(new MemoryGameDataAccess(), 16, NEVER);
+
+        GameData gameData = gameDataAccess.createGame("writeBehindGame");
+        gameData.game().makeMove(FIRST_MOVE);
+        gameDataAccess.recordMove(gameData, FIRST_MOVE);
+        GameData readGame = gameDataAccess.getGame(gameData.gameID());
+        GameData listedGame = gameDataAccess.listAllGames().iterator().next();
+
+        assertEquals(gameData.game(), readGame.game());
+        assertNotSame(gameData.game(), readGame.game());
+        assertNotSame(gameData.game(), listedGame.game());
+        gameData.game().makeMove(SECOND_MOVE);
+        assertEquals(1, readGame.game().getMoveCount());
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadPoolTest {
+    private final VirtualThreadPool pool = new VirtualThreadPool();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.stop();
+    }
+
+    @Test
+    void runsTasksOnVirtualThreads() throws Exception {
+        pool.start();
+        var virtual = new AtomicBoolean();
+        var ran = new CountDownLatch(1);
+
+        assertTrue(pool.tryExecute(() -> {
+            virtual.set(Thread.currentThread().isVirtual());
+            ran.countDown();
+        }));
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(virtual.get());
+        assertFalse(pool.isLowOnThreads());
+    }
+
+    @Test
+    void countsRunningTasks() throws Exception {
+        pool.start();
+        var release = new CountDownLatch(1);
+        var finished = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            pool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.countDown();
+            });
+        }
+
+        assertEquals(3, pool.getThreads());
+        assertEquals(0, pool.getIdleThreads());
+
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getThreads());
+    }
+
+    @Test
+    void refusesTasksWhenStoppedAndRunsThemAgainOnceRestarted() throws Exception {
+        pool.start();
+        pool.stop();
+
+        assertFalse(pool.tryExecute(() -> { }));
+        assertEquals(0, pool.getThreads());
+
+        pool.start();
+        var ran = new CountDownLatch(1);
+        assertTrue(pool.tryExecute(ran::countDown));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -10,7 +10,9 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import requestresult.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -124,6 +126,31 @@ public class GameServiceTest {
 
         assertEquals(userToJoin.username(), firstGame.whiteUsername());
     }
+
+    @ParameterizedTest
+    @MethodSource("dataAccessTypesWithUser")
+    public void joinGameNotifiesListeners(Class<? extends UserDataAccess> userDataAccessClass,
+                                          Class<? extends AuthDataAccess> authDataAccessClass,
+                                          Class<? extends GameDataAccess> gameDataAccessClass) throws Exception {
+        var userDataAccess = userDataAccessClass.getDeclaredConstructor().newInstance();
+        var authDataAccess = authDataAccessClass.getDeclaredConstructor().newInstance();
+        var gameDataAccess = gameDataAccessClass.getDeclaredConstructor().newInstance();
+        GameService service = new GameService(authDataAccess, gameDataAccess);
+        List<String> seated = new ArrayList<>();
+        service.addJoinListener((gameID, username) -> seated.add(gameID + ":" + username));
+
+        UserData userToJoin = new UserData("BYU students", "sure love their", "ice cream");
+        addUserIfNotAlreadyInDatabase(userDataAccess, userToJoin);
+        gameDataAccess.deleteAllGames();
+        GameData game = gameDataAccess.createGame("CONE");
+        AuthData auth = authDataAccess.createAuth(userToJoin.username());
+
+        service.join(new JoinRequest(auth.authToken(), ChessGame.TeamColor.BLACK, game.gameID()));
+        assertThrows(DataAccessException.class,
+                () -> service.join(new JoinRequest(auth.authToken(), ChessGame.TeamColor.BLACK, game.gameID())));
+
+        assertEquals(List.of(game.gameID() + ":" + userToJoin.username()), seated);
+    }
     @ParameterizedTest
     @MethodSource("dataAccessTypes")
     public void joinGameUnauthorizedThrowsException(Class<? extends AuthDataAccess> authDataAccessClass,
@@ -10,6 +10,9 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.mindrot.jbcrypt.BCrypt;
 import requestresult.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -188,6 +191,68 @@ public class UserServiceTest {
         assertThrows(DataAccessException.class, () -> service.logout(request));
     }
 
+    @ParameterizedTest
+    @ValueSource(classes = {MemoryAuthDataAccess.class})
+    public void logoutNotifiesListenersOfToken(Class<? extends AuthDataAccess> authDataAccessClass) throws Exception {
+        var authDataAccess = authDataAccessClass.getDeclaredConstructor().newInstance();
+        UserService service = new UserService(null, authDataAccess);
+        List<String> loggedOut = new ArrayList<>();
+        service.addLogoutListener(loggedOut::add);
+
+        AuthData auth = authDataAccess.createAuth("Whoosh");
+        assertThrows(DataAccessException.class, () -> service.logout(new LogoutRequest("Shane")));
+        service.logout(new LogoutRequest(auth.authToken()));
+
+        assertEquals(List.of(auth.authToken()), loggedOut);
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MemoryUserDataAccess.class})
+    public void loginRehashesPasswordWhenCostChanged(Class<? extends UserDataAccess> userDataAccessClass) throws Exception {
+        var userDataAccess = userDataAccessClass.getDeclaredConstructor().newInstance();
+        userDataAccess.addUser(new UserData("Ryan", BCrypt.hashpw("secret", BCrypt.gensalt(4)), "ryan@test.com"));
+        try (PasswordHasher hasher = new PasswordHasher(5, 1, 4)) {
+            UserService service = new UserService(userDataAccess, new MemoryAuthDataAccess(), hasher);
+
+            assertNotNull(service.login(new LoginRequest("Ryan", "secret")).authToken());
+            String rehashed = userDataAccess.getUser("Ryan").password();
+            assertEquals(5, PasswordHasher.costOf(rehashed));
+            assertTrue(BCrypt.checkpw("secret", rehashed));
+
+            assertNotNull(service.login(new LoginRequest("Ryan", "secret")).authToken());
+            assertEquals(rehashed, userDataAccess.getUser("Ryan").password());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {MemoryUserDataAccess.class})
+    public void saturatedHasherRejectsRegistration(Class<? extends UserDataAccess> userDataAccessClass) throws Exception {
+        var userDataAccess = userDataAccessClass.getDeclaredConstructor().newInstance();
+        try (PasswordHasher hasher = new PasswordHasher(12, 1, 1)) {
+            UserService service = new UserService(userDataAccess, new MemoryAuthDataAccess(), hasher);
+            List<Thread> threads = new ArrayList<>();
+            AtomicInteger rejected = new AtomicInteger();
+            for (int i = 0; i < 4; i++) {
+                String username = "user" + i;
+                threads.add(Thread.startVirtualThread(() -> {
+                    try {
+                        service.register(new RegisterRequest(username, "password", "email"));
+                    } catch (DataAccessException ex) {
+                        if (ex.getMessage().equals("service unavailable")) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // one hash runs and one waits in the queue, so at least two of the four are turned away
+            assertTrue(rejected.get() >= 2);
+            assertEquals(4 - rejected.get(), userDataAccess.getNumUsers());
+        }
+    }
+
     private void addUserIfNotAlreadyInDatabase(UserDataAccess userDataAccess, UserData user) throws DataAccessException {
         try {
             userDataAccess.addUser(user);
@@ -0,0 +1,88 @@
+package websocketserver;
+
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.junit.jupiter.api.Test;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionManagerTest {
+    private static NotificationMessage notification(String text) {
+        return new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, text);
+    }
+
+    @Test
+    void broadcastOnlyReachesThatGame() throws Exception {
+        var white = new FakeSession();
+        var black = new FakeSession();
+        var elsewhere = new FakeSession();
+        try (var connections = new ConnectionManager()) {
+            connections.add("white", white.session, 1, "white-token", false);
+            connections.add("black", black.session, 1, "black-token", false);
+            connections.add("elsewhere", elsewhere.session, 2, "elsewhere-token", false);
+
+            connections.broadcast("white", notification("white moved"), 1);
+
+            assertTrue(white.sent.isEmpty());
+            assertEquals(1, black.sent.size());
+            assertTrue(black.lastText().contains("white moved"));
+            assertTrue(elsewhere.sent.isEmpty());
+            assertEquals(2, connections.getConnectionCount(1));
+            assertEquals(1, connections.getConnectionCount(2));
+        }
+    }
+
+    @Test
+    void reconnectingMovesTheUserToTheNewGame() throws Exception {
+        var first = new FakeSession();
+        var second = new FakeSession();
+        try (var connections = new ConnectionManager()) {
+            connections.add("white", first.session, 1, "token", false);
+            Connection replaced = connections.add("white", second.session, 2, "token", false);
+
+            assertNotNull(replaced);
+            assertEquals(0, connections.getConnectionCount(1));
+            assertEquals(1, connections.getConnectionCount(2));
+        }
+    }
+
+    @Test
+    void closedSessionsAreDroppedDuringBroadcast() throws Exception {
+        var white = new FakeSession();
+        var black = new FakeSession();
+        try (var connections = new ConnectionManager()) {
+            connections.add("white", white.session, 1, "white-token", false);
+            connections.add("black", black.session, 1, "black-token", false);
+            black.open = false;
+
+            connections.broadcast(null, notification("hello"), 1);
+
+            assertEquals(1, white.sent.size());
+            assertTrue(black.sent.isEmpty());
+            assertEquals(1, connections.getConnectionCount(1));
+            assertNull(connections.authenticatedUsername(black.session, "black-token"));
+            assertEquals("white", connections.authenticatedUsername(white.session, "white-token"));
+        }
+    }
+
+    @Test
+    void countsDeflatedPayloadOnlyWhereNegotiated() throws Exception {
+        var deflated = new FakeSession(Map.of(), List.of(new ExtensionConfig("permessage-deflate")));
+        var plain = new FakeSession();
+        assertTrue(ConnectionManager.negotiated(deflated.session, "permessage-deflate"));
+        assertFalse(ConnectionManager.negotiated(plain.session, "permessage-deflate"));
+
+        try (var connections = new ConnectionManager()) {
+            connections.send(deflated.session, notification("compressed"));
+            long deflatedBytes = connections.getOutboundStats().getPayloadBytes();
+            connections.send(plain.session, notification("uncompressed"));
+
+            assertEquals(deflatedBytes, connections.getOutboundStats().getDeflatePayloadBytes());
+            assertTrue(connections.getOutboundStats().getPayloadBytes() > deflatedBytes);
+        }
+    }
+}
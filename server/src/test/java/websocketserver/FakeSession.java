@@ -0,0 +1,117 @@
+package websocketserver;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
+import org.eclipse.jetty.websocket.api.UpgradeResponse;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Jetty session that records what is sent to it instead of writing to a socket. Async sends
+ * stay in flight until the test completes them with {@link #completeWrite()}, unless
+ * {@link #completeWritesAtOnce} is set.
+ */
+class FakeSession {
+    final Session session;
+    final List<Object> sent = Collections.synchronizedList(new ArrayList<>());
+    final List<WriteCallback> pendingWrites = Collections.synchronizedList(new ArrayList<>());
+    volatile boolean open = true;
+    volatile boolean completeWritesAtOnce;
+    volatile int closeCode;
+    volatile String closeReason;
+    private final Map<String, List<String>> parameters;
+    private final List<ExtensionConfig> extensions;
+
+    FakeSession() {
+        this(Map.of(), List.of());
+    }
+
+    FakeSession(Map<String, List<String>> parameters, List<ExtensionConfig> extensions) {
+        this.parameters = parameters;
+        this.extensions = extensions;
+        RemoteEndpoint remote = proxy(RemoteEndpoint.class, (self, name, args) -> {
+            if (name.equals("sendString") || name.equals("sendBytes")) {
+                sent.add(args[0] instanceof ByteBuffer bytes ? copy(bytes) : args[0]);
+                if (args.length > 1 && completeWritesAtOnce) {
+                    ((WriteCallback) args[1]).writeSuccess();
+                } else if (args.length > 1) {
+                    pendingWrites.add((WriteCallback) args[1]);
+                }
+            }
+            return null;
+        });
+        UpgradeRequest request = proxy(UpgradeRequest.class,
+                (self, name, args) -> name.equals("getParameterMap") ? this.parameters : null);
+        UpgradeResponse response = proxy(UpgradeResponse.class,
+                (self, name, args) -> name.equals("getExtensions") ? this.extensions : null);
+        session = proxy(Session.class, (self, name, args) -> switch (name) {
+            case "getRemote" -> remote;
+            case "isOpen" -> open;
+            case "getUpgradeRequest" -> request;
+            case "getUpgradeResponse" -> response;
+            case "close" -> {
+                open = false;
+                if (args != null && args.length == 2) {
+                    closeCode = (Integer) args[0];
+                    closeReason = (String) args[1];
+                }
+                yield null;
+            }
+            case "hashCode" -> System.identityHashCode(self);
+            case "equals" -> args[0] == self;
+            case "toString" -> "FakeSession@" + System.identityHashCode(this);
+            default -> null;
+        });
+    }
+
+    /**
+     * Finishes the oldest write still in flight, as Jetty does once the frame is on the wire
+     */
+    void completeWrite() {
+        pendingWrites.remove(0).writeSuccess();
+    }
+
+    void failWrite() {
+        pendingWrites.remove(0).writeFailed(new java.io.IOException("connection reset"));
+    }
+
+    String lastText() {
+        return (String) sent.get(sent.size() - 1);
+    }
+
+    /**
+     * Waits for the server's mailboxes to have sent this many text frames, and returns them
+     */
+    List<String> awaitTexts(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        synchronized (sent) {
+            return sent.stream().map(String.class::cast).toList();
+        }
+    }
+
+    private static byte[] copy(ByteBuffer bytes) {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        return copy;
+    }
+
+    private interface Handler {
+        Object invoke(Object self, String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(FakeSession.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> handler.invoke(self, method.getName(), args)));
+    }
+}
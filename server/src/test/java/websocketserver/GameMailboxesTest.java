@@ -0,0 +1,63 @@
+package websocketserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameMailboxesTest {
+    private final GameMailboxes mailboxes = new GameMailboxes();
+
+    @Test
+    void runsAGamesCommandsInOrder() throws Exception {
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 200; i++) {
+            int command = i;
+            last = mailboxes.submit(1, () -> ran.add(command));
+        }
+        last.get(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(Integer.valueOf(i), ran.get(i));
+        }
+    }
+
+    @Test
+    void blockedGameDoesNotHoldUpAnother() throws Exception {
+        var release = new CountDownLatch(1);
+        CompletableFuture<Void> blocked = mailboxes.submit(1, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<Void> queuedBehind = mailboxes.submit(1, () -> { });
+
+        mailboxes.submit(2, () -> { }).get(5, TimeUnit.SECONDS);
+        assertFalse(blocked.isDone());
+        assertFalse(queuedBehind.isDone());
+
+        release.countDown();
+        queuedBehind.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failedCommandDoesNotStopTheNext() throws Exception {
+        CompletableFuture<Void> failed = mailboxes.submit(1, () -> {
+            throw new IllegalStateException("bad move");
+        });
+        var ran = new CountDownLatch(1);
+        mailboxes.submit(1, ran::countDown).get(5, TimeUnit.SECONDS);
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, ran.getCount());
+    }
+}
@@ -0,0 +1,82 @@
+package websocketserver;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import dataaccess.MemoryAuthDataAccess;
+import dataaccess.MemoryGameDataAccess;
+import model.GameData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import requestresult.JoinRequest;
+import service.GameService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotGameRegistryTest {
+    private MemoryAuthDataAccess authDataAccess;
+    private MemoryGameDataAccess gameDataAccess;
+    private GameService gameService;
+    private HotGameRegistry hotGames;
+    private int gameID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        authDataAccess = new MemoryAuthDataAccess();
+        gameDataAccess = new MemoryGameDataAccess();
+        gameService = new GameService(authDataAccess, gameDataAccess);
+        hotGames = new HotGameRegistry(gameService);
+        gameID = gameDataAccess.createGame("resident").gameID();
+    }
+
+    private void joinOverHttp(String username, ChessGame.TeamColor color) throws Exception {
+        String authToken = authDataAccess.createAuth(username).authToken();
+        gameService.join(new JoinRequest(authToken, color, gameID));
+    }
+
+    @Test
+    void reloadPicksUpAnHttpJoin() throws Exception {
+        hotGames.attach(gameID);
+        joinOverHttp("white", ChessGame.TeamColor.WHITE);
+
+        assertNull(hotGames.get(gameID).whiteUsername());
+        hotGames.reload(gameID);
+        assertEquals("white", hotGames.get(gameID).whiteUsername());
+    }
+
+    @Test
+    void reloadKeepsTheResidentBoard() throws Exception {
+        GameData attached = hotGames.attach(gameID);
+        var board = new ChessGame(attached.game());
+        board.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        hotGames.publish(new GameData(gameID, null, null, "resident", board, attached.version()));
+
+        joinOverHttp("black", ChessGame.TeamColor.BLACK);
+        GameData reloaded = hotGames.reload(gameID);
+
+        assertSame(board, reloaded.game());
+        assertEquals("black", reloaded.blackUsername());
+    }
+
+    @Test
+    void reloadLeavesOtherGamesToStorage() throws Exception {
+        joinOverHttp("white", ChessGame.TeamColor.WHITE);
+
+        assertEquals("white", hotGames.reload(gameID).whiteUsername());
+        assertEquals(0, hotGames.getResidentGameCount());
+    }
+
+    @Test
+    void vacateSeatAndEvict() throws Exception {
+        joinOverHttp("white", ChessGame.TeamColor.WHITE);
+        GameData attached = hotGames.attach(gameID);
+
+        hotGames.vacateSeat(gameID, ChessGame.TeamColor.WHITE);
+        assertNull(hotGames.get(gameID).whiteUsername());
+        assertEquals(attached.version() + 1, hotGames.get(gameID).version());
+
+        hotGames.evict(gameID);
+        assertEquals(0, hotGames.getResidentGameCount());
+        assertEquals("white", hotGames.get(gameID).whiteUsername());
+    }
+}
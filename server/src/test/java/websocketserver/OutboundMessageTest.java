@@ -0,0 +1,35 @@
+package websocketserver;
+
+import org.junit.jupiter.api.Test;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundMessageTest {
+    private static final NotificationMessage NOTIFICATION =
+            new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "white moved");
+
+    @Test
+    void encodesEachFormatOnce() {
+        var outbound = new OutboundMessage(NOTIFICATION);
+
+        assertSame(outbound.text(), outbound.text());
+        assertSame(outbound.binary(), outbound.binary());
+        assertFalse(outbound.isSnapshot());
+    }
+
+    @Test
+    void broadcastSharesOneEncoding() throws Exception {
+        var white = new FakeSession();
+        var black = new FakeSession();
+        try (var connections = new ConnectionManager()) {
+            connections.add("white", white.session, 1, "white-token", false);
+            connections.add("black", black.session, 1, "black-token", false);
+
+            connections.broadcast(null, NOTIFICATION, 1);
+
+            assertSame(white.lastText(), black.lastText());
+        }
+    }
+}
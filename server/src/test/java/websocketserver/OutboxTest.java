@@ -0,0 +1,123 @@
+package websocketserver;
+
+import chess.ChessGame;
+import model.GameData;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.junit.jupiter.api.Test;
+import websocket.BinaryProtocol;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboxTest {
+    private final FakeSession client = new FakeSession();
+    private final OutboundStats stats = new OutboundStats();
+
+    private static OutboundMessage notification(String text) {
+        return new OutboundMessage(new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, text));
+    }
+
+    private static OutboundMessage snapshot(String gameName) {
+        return new OutboundMessage(new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME,
+                new GameData(1, "white", "black", gameName, new ChessGame())));
+    }
+
+    @Test
+    void writesOneMessageAtATimeInOrder() {
+        var outbox = new Outbox(client.session, false, false, 8, stats);
+        outbox.send(notification("first"));
+        outbox.send(notification("second"));
+        outbox.send(notification("third"));
+
+        assertEquals(1, client.sent.size());
+        assertEquals(2, outbox.getQueueDepth());
+
+        client.completeWrite();
+        client.completeWrite();
+        assertEquals(3, client.sent.size());
+        assertTrue(((String) client.sent.get(0)).contains("first"));
+        assertTrue(((String) client.sent.get(1)).contains("second"));
+        assertTrue(((String) client.sent.get(2)).contains("third"));
+
+        client.completeWrite();
+        outbox.send(notification("fourth"));
+        assertEquals(4, client.sent.size());
+        assertEquals(0, outbox.getQueueDepth());
+    }
+
+    @Test
+    void newerSnapshotReplacesAQueuedOne() {
+        var outbox = new Outbox(client.session, false, false, 8, stats);
+        outbox.send(notification("in flight"));
+        outbox.send(snapshot("stale"));
+        outbox.send(notification("between"));
+        outbox.send(snapshot("fresh"));
+
+        assertEquals(2, outbox.getQueueDepth());
+        assertEquals(1, stats.getDroppedSnapshots());
+
+        client.completeWrite();
+        assertTrue(client.lastText().contains("between"));
+        client.completeWrite();
+        assertTrue(client.lastText().contains("fresh"));
+        assertEquals(3, client.sent.size());
+    }
+
+    @Test
+    void overflowDisconnectsTheClient() {
+        var outbox = new Outbox(client.session, false, false, 2, stats);
+        outbox.send(notification("in flight"));
+        outbox.send(notification("queued"));
+        outbox.send(notification("queued"));
+        outbox.send(notification("one too many"));
+
+        assertFalse(client.open);
+        assertEquals(StatusCode.POLICY_VIOLATION, client.closeCode);
+        assertEquals(1, stats.getSlowConsumerDisconnects());
+        assertEquals(0, outbox.getQueueDepth());
+
+        // the write already in flight finishes, but nothing more is sent
+        client.completeWrite();
+        outbox.send(notification("after"));
+        assertEquals(1, client.sent.size());
+    }
+
+    @Test
+    void countsPayloadBytesInUtf8() {
+        var outbox = new Outbox(client.session, false, false, 8, stats);
+        var message = notification("échec à la reine");
+        outbox.send(message);
+
+        assertEquals(message.text().getBytes(StandardCharsets.UTF_8).length, stats.getPayloadBytes());
+        assertTrue(stats.getPayloadBytes() > message.text().length());
+        assertEquals(0, stats.getDeflatePayloadBytes());
+    }
+
+    @Test
+    void failedWriteAbandonsTheQueue() {
+        var outbox = new Outbox(client.session, false, false, 8, stats);
+        outbox.send(notification("first"));
+        outbox.send(notification("second"));
+
+        client.failWrite();
+        outbox.send(notification("third"));
+
+        assertEquals(1, stats.getFailedSends());
+        assertEquals(0, outbox.getQueueDepth());
+        assertEquals(1, client.sent.size());
+    }
+
+    @Test
+    void binaryClientsGetFrames() {
+        var outbox = new Outbox(client.session, true, false, 8, stats);
+        outbox.send(notification("white moved"));
+
+        var decoded = (NotificationMessage) BinaryProtocol.decodeMessage(ByteBuffer.wrap((byte[]) client.sent.get(0)));
+        assertEquals("white moved", decoded.getMessage());
+    }
+}
@@ -0,0 +1,111 @@
+package websocketserver;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dataaccess.MemoryAuthDataAccess;
+import dataaccess.MemoryGameDataAccess;
+import dataaccess.MemoryUserDataAccess;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import requestresult.JoinRequest;
+import service.GameService;
+import service.UserService;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WSServerTest {
+    private static final Gson GSON = new Gson();
+    private MemoryAuthDataAccess authDataAccess;
+    private GameService gameService;
+    private WSServer server;
+    private int gameID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        authDataAccess = new MemoryAuthDataAccess();
+        var gameDataAccess = new MemoryGameDataAccess();
+        gameService = new GameService(authDataAccess, gameDataAccess);
+        server = new WSServer(new UserService(new MemoryUserDataAccess(), authDataAccess), gameService);
+        gameID = gameDataAccess.createGame("moves").gameID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private String join(String username, ChessGame.TeamColor color) throws Exception {
+        String authToken = authDataAccess.createAuth(username).authToken();
+        gameService.join(new JoinRequest(authToken, color, gameID));
+        return authToken;
+    }
+
+    private FakeSession connect(String authToken, Map<String, List<String>> parameters) throws Exception {
+        var client = new FakeSession(parameters, List.of());
+        client.completeWritesAtOnce = true;
+        server.onMessage(client.session, GSON.toJson(new UserGameCommand(UserGameCommand.CommandType.CONNECT,
+                authToken, gameID)));
+        client.awaitTexts(1);
+        return client;
+    }
+
+    private static JsonObject parse(String text) {
+        return JsonParser.parseString(text).getAsJsonObject();
+    }
+
+    private static String type(String text) {
+        return parse(text).get("serverMessageType").getAsString();
+    }
+
+    @Test
+    void movesGoToClientsThatKeepTheirOwnBoard() throws Exception {
+        String whiteToken = join("white", ChessGame.TeamColor.WHITE);
+        String blackToken = join("black", ChessGame.TeamColor.BLACK);
+        FakeSession white = connect(whiteToken, Map.of("updates", List.of("moves")));
+        FakeSession black = connect(blackToken, Map.of());
+        white.awaitTexts(2);
+
+        var move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        server.onMessage(white.session, GSON.toJson(new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE,
+                whiteToken, gameID, move)));
+
+        // white: LOAD_GAME, black's arrival, then just the move
+        List<String> toWhite = white.awaitTexts(3);
+        assertEquals(3, toWhite.size());
+        assertEquals("MOVE", type(toWhite.get(2)));
+        assertEquals(1, parse(toWhite.get(2)).get("seq").getAsInt());
+
+        // black: LOAD_GAME, then the whole game and a notification of the move
+        List<String> toBlack = black.awaitTexts(3);
+        assertEquals(3, toBlack.size());
+        assertEquals("LOAD_GAME", type(toBlack.get(1)));
+        assertEquals("NOTIFICATION", type(toBlack.get(2)));
+    }
+
+    @Test
+    void connectingAgainOnTheSameSessionResyncs() throws Exception {
+        String whiteToken = join("white", ChessGame.TeamColor.WHITE);
+        String blackToken = join("black", ChessGame.TeamColor.BLACK);
+        FakeSession white = connect(whiteToken, Map.of("updates", List.of("moves")));
+        FakeSession black = connect(blackToken, Map.of());
+        white.awaitTexts(2);
+
+        server.onMessage(white.session, GSON.toJson(new UserGameCommand(UserGameCommand.CommandType.CONNECT,
+                whiteToken, gameID)));
+
+        assertEquals("LOAD_GAME", type(white.awaitTexts(3).get(2)));
+        // the resync is not announced to the other player
+        Thread.sleep(100);
+        assertEquals(1, black.sent.size());
+    }
+}
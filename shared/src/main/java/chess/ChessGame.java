@@ -1,5 +1,6 @@
 package chess;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
@@ -11,9 +12,11 @@ import java.util.Objects;
  * signature of the existing methods.
  */
 public class ChessGame {
+    public static final int PACKED_SIZE = 38;
     private ChessBoard board;
     private TeamColor teamTurn;
     private boolean gameOver;
+    private int moveCount;
 
     public ChessGame() {
         board = new ChessBoard();
@@ -21,6 +24,17 @@ public class ChessGame {
         teamTurn = TeamColor.WHITE;
     }
 
+    /**
+     * Secondary constructor to aid in deep copies
+     * @param game game to duplicate
+     */
+    public ChessGame(ChessGame game) {
+        board = new ChessBoard(game.board);
+        teamTurn = game.teamTurn;
+        gameOver = game.gameOver;
+        moveCount = game.moveCount;
+    }
+
     /**
      * @return Which team's turn it is
      */
@@ -45,6 +59,13 @@ public class ChessGame {
         this.gameOver = true;
     }
 
+    /**
+     * @return How many moves have been made in this game so far
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
     /**
      * Enum identifying the 2 possible teams in a chess game
      */
@@ -168,6 +189,7 @@ public class ChessGame {
                 }
             }
             teamTurn = teamTurn == TeamColor.BLACK ? TeamColor.WHITE : TeamColor.BLACK;
+            moveCount++;
 
             // Remove castling eligibility, if applicable
             if (piece.getPieceType() == ChessPiece.PieceType.KING) {
@@ -297,6 +319,77 @@ public class ChessGame {
         return board;
     }
 
+    /**
+     * Writes this game as a fixed {@value #PACKED_SIZE}-byte position: a 4-bit code for each
+     * square, then a flags byte (side to move, game over, lost castles), the en passant square
+     * and the move count
+     *
+     * @param out buffer to write the position into
+     */
+    public void pack(ByteBuffer out) {
+        for (int square = 0; square < 64; square += 2) {
+            out.put((byte) (pieceCode(square) | pieceCode(square + 1) << 4));
+        }
+        int flags = (teamTurn == TeamColor.BLACK ? 1 : 0) | (gameOver ? 2 : 0)
+                | (board.getHasLostCastle(TeamColor.WHITE, false) ? 4 : 0)
+                | (board.getHasLostCastle(TeamColor.WHITE, true) ? 8 : 0)
+                | (board.getHasLostCastle(TeamColor.BLACK, false) ? 16 : 0)
+                | (board.getHasLostCastle(TeamColor.BLACK, true) ? 32 : 0);
+        out.put((byte) flags);
+        ChessPosition enPassant = board.getEnPassantVulnerability();
+        out.put((byte) (enPassant == null ? -1 : (enPassant.getRow() - 1) * 8 + enPassant.getColumn() - 1));
+        out.putInt(moveCount);
+    }
+
+    /**
+     * Rebuilds a game from the position written by {@link #pack(ByteBuffer)}
+     *
+     * @param in buffer positioned at a packed game
+     * @return the decoded game
+     */
+    public static ChessGame unpack(ByteBuffer in) {
+        ChessBoard board = new ChessBoard();
+        for (int square = 0; square < 64; square += 2) {
+            int codes = in.get();
+            addPiece(board, square, codes & 0xF);
+            addPiece(board, square + 1, (codes >> 4) & 0xF);
+        }
+        int flags = in.get();
+        if ((flags & 4) != 0) { board.removeCastleEligibility(TeamColor.WHITE, false); }
+        if ((flags & 8) != 0) { board.removeCastleEligibility(TeamColor.WHITE, true); }
+        if ((flags & 16) != 0) { board.removeCastleEligibility(TeamColor.BLACK, false); }
+        if ((flags & 32) != 0) { board.removeCastleEligibility(TeamColor.BLACK, true); }
+        int enPassant = in.get();
+        if (enPassant >= 0) {
+            board.setEnPassantVulnerability(new ChessPosition(enPassant / 8 + 1, enPassant % 8 + 1));
+        }
+
+        ChessGame game = new ChessGame();
+        game.board = board;
+        game.teamTurn = (flags & 1) != 0 ? TeamColor.BLACK : TeamColor.WHITE;
+        game.gameOver = (flags & 2) != 0;
+        game.moveCount = in.getInt();
+        return game;
+    }
+
+    // 0 for an empty square, otherwise the piece type's ordinal + 1, plus 8 for black
+    private int pieceCode(int square) {
+        ChessPiece piece = board.getPiece(new ChessPosition(square / 8 + 1, square % 8 + 1));
+        if (piece == null) {
+            return 0;
+        }
+        return piece.getPieceType().ordinal() + 1 | (piece.getTeamColor() == TeamColor.BLACK ? 8 : 0);
+    }
+
+    private static void addPiece(ChessBoard board, int square, int code) {
+        if (code == 0) {
+            return;
+        }
+        TeamColor color = (code & 8) != 0 ? TeamColor.BLACK : TeamColor.WHITE;
+        ChessPiece.PieceType type = ChessPiece.PieceType.values()[(code & 7) - 1];
+        board.addPiece(new ChessPosition(square / 8 + 1, square % 8 + 1), new ChessPiece(color, type));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
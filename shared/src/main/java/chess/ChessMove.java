@@ -44,6 +44,36 @@ public class ChessMove {
         return promotionPiece;
     }
 
+    /**
+     * Packs this move into 15 bits: start square, end square, and promotion piece
+     *
+     * @return compact integer encoding of this move
+     */
+    public int pack() {
+        int promotion = promotionPiece == null ? 0 : promotionPiece.ordinal() + 1;
+        return squareIndex(startPosition) | squareIndex(endPosition) << 6 | promotion << 12;
+    }
+
+    /**
+     * Rebuilds a move from the encoding produced by {@link #pack()}
+     *
+     * @param packed compact integer encoding of a move
+     * @return the decoded move
+     */
+    public static ChessMove unpack(int packed) {
+        int promotion = (packed >> 12) & 0x7;
+        ChessPiece.PieceType promotionPiece = promotion == 0 ? null : ChessPiece.PieceType.values()[promotion - 1];
+        return new ChessMove(squareAt(packed & 0x3F), squareAt((packed >> 6) & 0x3F), promotionPiece);
+    }
+
+    private static int squareIndex(ChessPosition position) {
+        return (position.getRow() - 1) * 8 + (position.getColumn() - 1);
+    }
+
+    private static ChessPosition squareAt(int index) {
+        return new ChessPosition(index / 8 + 1, index % 8 + 1);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
@@ -2,11 +2,19 @@ package model;
 
 import chess.ChessGame;
 
+/**
+ * @param version bumped each time the players or the stored game are replaced, so that
+ *                writers working from a stale copy can be detected
+ */
 public record GameData(
         int gameID,
         String whiteUsername,
         String blackUsername,
         String gameName,
-        ChessGame game
+        ChessGame game,
+        int version
 ) {
+    public GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
+        this(gameID, whiteUsername, blackUsername, gameName, game, 0);
+    }
 }
@@ -0,0 +1,30 @@
+package model;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * The JSON sent to clients over HTTP and WebSocket. It leaves out bookkeeping that only the
+ * server uses, such as {@link GameData#version()}, which is still kept wherever the server
+ * stores its own copy of a game.
+ */
+public final class WireFormat {
+    public static final Gson GSON = new GsonBuilder()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == GameData.class && field.getName().equals("version");
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+            })
+            .create();
+
+    private WireFormat() {
+    }
+}
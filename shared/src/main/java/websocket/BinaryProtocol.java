@@ -0,0 +1,183 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import model.GameData;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary frame encoding of the WebSocket commands and server messages, an alternative to JSON
+ * text frames that clients ask for with protocol=binary in the WebSocket URI.
+ * <p>
+ * Every frame starts with a fixed header, the message type's ordinal in one byte followed by
+ * the game ID as a 4-byte int, then the body for that type. Moves are sent as the 2-byte
+ * {@link ChessMove#pack()} encoding and boards as the {@link ChessGame#pack} position. Strings
+ * are a 2-byte length and UTF-8 bytes, with a length of 0xFFFF meaning null. Integers are
+ * big-endian.
+ * <pre>
+ * command:      type, gameID, authToken [, move for MAKE_MOVE]
+ * LOAD_GAME:    type, gameID, whiteUsername, blackUsername, gameName, position
+ * MOVE:         type, gameID, move, seq (4 bytes), status (1 byte)
+ * ERROR:        type, 0, errorMessage
+ * NOTIFICATION: type, 0, message
+ * </pre>
+ */
+public final class BinaryProtocol {
+    public static final String QUERY_PARAMETER = "protocol";
+    public static final String QUERY_VALUE = "binary";
+
+    private static final int HEADER_SIZE = 5;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private BinaryProtocol() {
+    }
+
+    public static ByteBuffer encodeCommand(UserGameCommand command) {
+        byte[] authToken = utf8(command.getAuthToken());
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + 2 + (authToken == null ? 0 : authToken.length) + 2);
+        putHeader(out, command.getCommandType().ordinal(), command.getGameID() == null ? 0 : command.getGameID());
+        putString(out, authToken);
+        if (command instanceof MakeMoveCommand moveCommand && moveCommand.getMove() != null) {
+            out.putShort((short) moveCommand.getMove().pack());
+        }
+        return out.flip();
+    }
+
+    /**
+     * Decodes a command frame; a MAKE_MOVE comes back as a {@link MakeMoveCommand}
+     *
+     * @throws IllegalArgumentException if the frame is truncated or names an unknown command
+     */
+    public static UserGameCommand decodeCommand(ByteBuffer in) {
+        try {
+            UserGameCommand.CommandType type = typeAt(UserGameCommand.CommandType.values(), in.get());
+            int gameID = in.getInt();
+            String authToken = getString(in);
+            if (type == UserGameCommand.CommandType.MAKE_MOVE) {
+                return new MakeMoveCommand(type, authToken, gameID, ChessMove.unpack(in.getShort() & 0xFFFF));
+            }
+            return new UserGameCommand(type, authToken, gameID);
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("truncated command frame");
+        }
+    }
+
+    public static byte[] encodeMessage(ServerMessage message) {
+        ByteBuffer out;
+        int type = message.getServerMessageType().ordinal();
+        switch (message) {
+            case LoadGameMessage load -> {
+                GameData game = load.getGame();
+                byte[] white = utf8(game.whiteUsername());
+                byte[] black = utf8(game.blackUsername());
+                byte[] name = utf8(game.gameName());
+                out = ByteBuffer.allocate(HEADER_SIZE + stringSize(white) + stringSize(black)
+                        + stringSize(name) + ChessGame.PACKED_SIZE);
+                putHeader(out, type, game.gameID());
+                putString(out, white);
+                putString(out, black);
+                putString(out, name);
+                game.game().pack(out);
+            }
+            case MoveMessage move -> {
+                out = ByteBuffer.allocate(HEADER_SIZE + 2 + 4 + 1);
+                putHeader(out, type, move.getGameID());
+                out.putShort((short) move.getMove().pack());
+                out.putInt(move.getSeq());
+                out.put((byte) move.getStatus());
+            }
+            case ErrorMessage error -> out = textMessage(type, error.getErrorMessage());
+            case NotificationMessage notification -> out = textMessage(type, notification.getMessage());
+            default -> throw new IllegalArgumentException("no binary encoding for " + message.getServerMessageType());
+        }
+        return out.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is truncated or names an unknown message type
+     */
+    public static ServerMessage decodeMessage(ByteBuffer in) {
+        try {
+            ServerMessage.ServerMessageType type = typeAt(ServerMessage.ServerMessageType.values(), in.get());
+            int gameID = in.getInt();
+            return switch (type) {
+                case LOAD_GAME -> {
+                    String white = getString(in);
+                    String black = getString(in);
+                    String name = getString(in);
+                    ChessGame game = ChessGame.unpack(in);
+                    yield new LoadGameMessage(type, new GameData(gameID, white, black, name, game));
+                }
+                case MOVE -> {
+                    ChessMove move = ChessMove.unpack(in.getShort() & 0xFFFF);
+                    int seq = in.getInt();
+                    yield new MoveMessage(type, gameID, move, seq, in.get() & 0xFF);
+                }
+                case ERROR -> new ErrorMessage(type, getString(in));
+                case NOTIFICATION -> new NotificationMessage(type, getString(in));
+            };
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("truncated message frame");
+        }
+    }
+
+    private static ByteBuffer textMessage(int type, String text) {
+        byte[] bytes = utf8(text);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + stringSize(bytes));
+        putHeader(out, type, 0);
+        putString(out, bytes);
+        return out;
+    }
+
+    private static <T> T typeAt(T[] types, byte ordinal) {
+        if (ordinal < 0 || ordinal >= types.length) {
+            throw new IllegalArgumentException("unknown frame type " + ordinal);
+        }
+        return types[ordinal];
+    }
+
+    private static void putHeader(ByteBuffer out, int type, int gameID) {
+        out.put((byte) type);
+        out.putInt(gameID);
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putShort((short) NULL_STRING);
+            return;
+        }
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("string too long for a binary frame");
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package websocket.messages;
+
+import chess.ChessMove;
+
+/**
+ * One move made in a game, for clients that keep their own copy of the board. seq is the
+ * game's move count after the move, so a client can tell when it has missed one and needs
+ * a full LOAD_GAME again. The status flags describe the side now to move.
+ */
+public class MoveMessage extends ServerMessage {
+    public static final int CHECK = 1;
+    public static final int CHECKMATE = 2;
+    public static final int STALEMATE = 4;
+    public static final int GAME_OVER = 8;
+
+    private final int gameID;
+    private final int move;
+    private final int seq;
+    private final int status;
+
+    public MoveMessage(ServerMessageType type, int gameID, ChessMove move, int seq, int status) {
+        super(type);
+        this.gameID = gameID;
+        this.move = move.pack();
+        this.seq = seq;
+        this.status = status;
+    }
+
+    public int getGameID() {
+        return gameID;
+    }
+
+    public ChessMove getMove() {
+        return ChessMove.unpack(move);
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean hasStatus(int flag) {
+        return (status & flag) != 0;
+    }
+}
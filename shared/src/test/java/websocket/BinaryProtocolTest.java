@@ -0,0 +1,111 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import model.GameData;
+import org.junit.jupiter.api.Test;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.MoveMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolTest {
+    private static final ChessMove PROMOTION = new ChessMove(new ChessPosition(7, 1), new ChessPosition(8, 1),
+            ChessPiece.PieceType.QUEEN);
+
+    private static ServerMessage roundTrip(ServerMessage message) {
+        return BinaryProtocol.decodeMessage(ByteBuffer.wrap(BinaryProtocol.encodeMessage(message)));
+    }
+
+    @Test
+    void commandsRoundTrip() {
+        for (var type : UserGameCommand.CommandType.values()) {
+            if (type == UserGameCommand.CommandType.MAKE_MOVE) {
+                continue;
+            }
+            var command = new UserGameCommand(type, "token-é", 42);
+            assertEquals(command, BinaryProtocol.decodeCommand(BinaryProtocol.encodeCommand(command)));
+        }
+    }
+
+    @Test
+    void makeMoveRoundTrips() {
+        var command = new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, "token", 42, PROMOTION);
+
+        var decoded = (MakeMoveCommand) BinaryProtocol.decodeCommand(BinaryProtocol.encodeCommand(command));
+
+        assertEquals(UserGameCommand.CommandType.MAKE_MOVE, decoded.getCommandType());
+        assertEquals("token", decoded.getAuthToken());
+        assertEquals(Integer.valueOf(42), decoded.getGameID());
+        assertEquals(PROMOTION, decoded.getMove());
+    }
+
+    @Test
+    void loadGameRoundTrips() throws Exception {
+        var game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        var message = new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME,
+                new GameData(7, "white", null, "partie", game, 3));
+
+        var decoded = (LoadGameMessage) roundTrip(message);
+
+        GameData gameData = decoded.getGame();
+        assertEquals(7, gameData.gameID());
+        assertEquals("white", gameData.whiteUsername());
+        assertNull(gameData.blackUsername());
+        assertEquals("partie", gameData.gameName());
+        assertEquals(game.getBoard(), gameData.game().getBoard());
+        assertEquals(game.getTeamTurn(), gameData.game().getTeamTurn());
+        // the version is the server's own bookkeeping and stays off the wire
+        assertEquals(0, gameData.version());
+    }
+
+    @Test
+    void moveRoundTrips() {
+        var message = new MoveMessage(ServerMessage.ServerMessageType.MOVE, 7, PROMOTION, 31,
+                MoveMessage.CHECKMATE | MoveMessage.GAME_OVER);
+
+        var decoded = (MoveMessage) roundTrip(message);
+
+        assertEquals(7, decoded.getGameID());
+        assertEquals(PROMOTION, decoded.getMove());
+        assertEquals(31, decoded.getSeq());
+        assertTrue(decoded.hasStatus(MoveMessage.CHECKMATE));
+        assertTrue(decoded.hasStatus(MoveMessage.GAME_OVER));
+        assertFalse(decoded.hasStatus(MoveMessage.CHECK));
+    }
+
+    @Test
+    void textMessagesRoundTrip() {
+        var error = (ErrorMessage) roundTrip(new ErrorMessage(ServerMessage.ServerMessageType.ERROR, "Error: échec"));
+        var notification = (NotificationMessage) roundTrip(
+                new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "white moved"));
+
+        assertEquals("Error: échec", error.getErrorMessage());
+        assertEquals("white moved", notification.getMessage());
+    }
+
+    @Test
+    void truncatedFramesAreRejected() {
+        byte[] frame = BinaryProtocol.encodeMessage(
+                new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, "white moved"));
+        ByteBuffer command = BinaryProtocol.encodeCommand(
+                new MakeMoveCommand(UserGameCommand.CommandType.MAKE_MOVE, "token", 42, PROMOTION));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryProtocol.decodeMessage(ByteBuffer.wrap(Arrays.copyOf(frame, frame.length - 1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryProtocol.decodeCommand(command.limit(command.limit() - 1)));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeMessage(ByteBuffer.wrap(new byte[]{9})));
+    }
+}